@@ -8,7 +8,7 @@
  * file: Client.java
  * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
  * date: 18 may 2023
- * modified: 21 may 2023
+ * modified: 18 october 2026
  *
  **********************************************************************/
 
@@ -16,7 +16,20 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -30,6 +43,30 @@ public class Client {
 	
 	private static int MAX_CHAR = 200;
 	
+	private static int BUSY_RETRY_DELAY_MS = 1000;
+	
+	private static String SESSION_PREFIX = "#SESSION ";
+
+	private static String LOGIN_ABORTED_PREFIX = "Login aborted : ";
+	
+	private static String HISTORY_PREFIX = "#HISTORY ";
+	
+	private static String MESSAGE_PREFIX = "#MSG ";
+	
+	private static String ACK_PREFIX = "#ACK ";
+	
+	private static String NACK_PREFIX = "#NACK ";
+	
+	private static String BACKFILL_PREFIX = "#BACKFILL ";
+	
+	private static int PENDING_MESSAGES_LIMIT = 64;
+	
+	private static int READ_ACK_PERIOD_MS = 1000;
+	
+	private static int OLD_MESSAGES_LIMIT = 15;
+	
+	private static int SCROLLBACK_LIMIT = 50;
+	
 	private boolean isActive = true;
 	
 	private int serverPort;
@@ -44,6 +81,18 @@ public class Client {
 		
 	private ClientMessageReceiver receiver;
 	
+	private RosterView rosterView = new RosterView();
+	
+	private TerminalRenderer renderer = new TerminalRenderer();
+	
+	private LocalMessageCache messageCache;
+	
+	private ArrayBlockingQueue<String> pendingMessages = new ArrayBlockingQueue<>(PENDING_MESSAGES_LIMIT);
+	
+	private ScheduledExecutorService readAcknowledger;
+	
+	private long acknowledgedSequence = 0;
+	
 	/**
 	*
 	* The main method to run the client application.
@@ -76,12 +125,22 @@ public class Client {
 		try {
 			createConnexionWithServer();
 			validateCredentials();
+			sendFrame("/roster " + rosterView.requestVersion());
+			System.out.println("Write your message or write 'quit' in order to close the client. "
+		            + "Any message with more than 200 character will be cropped. "
+		            + "Write '/help' to list the commands managing your subscriptions "
+		            + "and '/scrollback' to show your local history.");
+			renderer.start();
 			receiver = new ClientMessageReceiver(fromServerCanal);
 			Thread receiverThread = new Thread(receiver);
 	        receiverThread.start();
+	        startReadAcknowledger();
 			while (isActive) {
 				sendMessage();
 			}
+			readAcknowledger.shutdown();
+			renderer.stop();
+			messageCache.close();
 		} catch (IOException e) {
 			System.out.println("Chat room server is down.");
 			System.out.println("Try again later.");
@@ -125,16 +184,19 @@ public class Client {
 	
 	/**
 	*
-	* This method retrieves user's user name and password from user.
+	* This method retrieves user's user name and password from user. If a
+	* session token was kept from the last login of the user, the password
+	* can be left empty to resume the session instead.
 	*
 	*/
 	private void authentificateClient() {
 		System.out.println("****************************************\nLogin information\n");
 		System.out.println("Enter username :");
 		username = scanner.nextLine();
-		System.out.println("Enter password :");
+		boolean canResume = !username.isBlank() && Files.exists(getUserFilePath("session"));
+		System.out.println(canResume ? "Enter password, or leave it empty to resume your last session :" : "Enter password :");
 		password = scanner.nextLine();
-		if (username.isBlank() || password.isBlank()) {
+		if (username.isBlank() || (password.isBlank() && !canResume)) {
 			System.out.println("You have to enter at leats one character.");
 			authentificateClient();
 		}
@@ -154,44 +216,191 @@ public class Client {
 	
 	/**
 	*
-	*	This method validates the client's credentials with the server.
+	*	This method validates the client's credentials with the server. The
+	*	user name, the password and the session token are sent in separate
+	*	frames. The session token kept from the last login is only sent if
+	*	the user left the password empty to resume the session, so that the
+	*	server does not have to hash it. If the credentials are refused, the
+	*	connection is closed while the user types them again, since the
+	*	server only waits a handshake timeout for them. If the server ended
+	*	the login, the client tells why and connects again. The token received
+	*	after login is kept for the next one. Then, only the messages newer
+	*	than the ones kept in the local cache are requested to the server.
 	*
 	*	@throws IOException if an I/O error occurs while validating the credentials
 	*
 	*/
 	private void validateCredentials() throws IOException {
+		String sessionToken = password.isEmpty() ? readSessionToken() : null;
 		toServerCanal.writeUTF(username);
 		toServerCanal.writeUTF(password);
+		toServerCanal.writeUTF(sessionToken == null ? "" : sessionToken);
 		System.out.println("Requesting communication with server ...");
 		System.out.println("Server : please wait while we validate your credentials.\n");
 		String validation = fromServerCanal.readUTF();
 		System.out.println(validation);
-		if (validation.equals("Invalid password : please try again.") || validation.equals("This user is already logged in.")) { 
-			authentificateClient();
+		if (validation.equals("Session expired : please try again.")) {
+			Files.deleteIfExists(getUserFilePath("session"));
+			logInAgain(true);
+		} else if (validation.equals("Server busy : please try again.")) {
+			waitBeforeRetry();
 			validateCredentials();
+		} else if (validation.startsWith(LOGIN_ABORTED_PREFIX)) {
+			System.out.println("Connecting to the server again ...");
+			waitBeforeRetry();
+			logInAgain(false);
+		} else if (validation.equals("Invalid password : please try again.") || validation.equals("This user is already logged in.")) { 
+			logInAgain(true);
 		} else {
+			String session = fromServerCanal.readUTF();
+			writeSessionToken(session.substring(SESSION_PREFIX.length()));
+			messageCache = new LocalMessageCache(getUserFilePath("cache").toString());
+			messageCache.open();
 			System.out.println("Server started on " + serverAddress + " : " + serverPort);
 			System.out.println("****************************************\n");
-			String oldMessages = fromServerCanal.readUTF();
-			System.out.println(oldMessages);
+			toServerCanal.writeUTF("/history " + messageCache.getLastSequence());
+			syncOldMessages(fromServerCanal.readUTF());
 			System.out.println("****************************************\n");
 		}
 	}
 	
 	/**
 	*
-	*	This method sends user message to the server.
+	*	This method closes the connection with the server and logs in again
+	*	on a new connection.
+	*
+	*	@param boolean isAskingCredentials true to ask the user for the credentials again
+	*	@throws IOException if an I/O error occurs while logging in again
+	*
+	*/
+	private void logInAgain(boolean isAskingCredentials) throws IOException {
+		socket.close();
+		if (isAskingCredentials) {
+			authentificateClient();
+		}
+		createConnexionWithServer();
+		validateCredentials();
+	}
+	
+	/**
+	*
+	*	This method waits before sending the credentials again to a server
+	*	which could not verify them.
+	*
+	*/
+	private void waitBeforeRetry() {
+		try {
+			Thread.sleep(BUSY_RETRY_DELAY_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	*
+	*	This method adds the messages sent by the server after login to the
+	*	local cache and prints the most recent ones from the cache. If the
+	*	server's newest message is older than the cache's, the server's 
+	*	database was replaced and the cache is emptied first.
+	*
+	*	@param String history the old messages sent by the server
+	*	@throws IOException if an I/O error occurs while writing the cache
+	*
+	*/
+	private void syncOldMessages(String history) throws IOException {
+		String[] lines = history.split("\n");
+		long serverLastSequence = Long.parseLong(lines[0].substring(HISTORY_PREFIX.length()));
+		if (serverLastSequence < messageCache.getLastSequence()) {
+			messageCache.clear();
+		}
+		for (int index = 1; index < lines.length; index++) {
+			int separator = lines[index].indexOf(' ');
+			messageCache.append(Long.parseLong(lines[index].substring(0, separator)), lines[index].substring(separator + 1));
+		}
+		List<String> oldMessages = messageCache.getRecentMessages(OLD_MESSAGES_LIMIT);
+		System.out.println("You have " + (lines.length - 1) + " new messages since your last visit.");
+		System.out.println("You have " + oldMessages.size() + " old messages");
+		oldMessages.forEach(message -> System.out.println(message));
+	}
+	
+	/**
+	*
+	*	This method reads the session token kept from the last login of the
+	*	user on the server.
+	*
+	*	@return String the session token, null if there is none
+	*	@throws IOException if an I/O error occurs while reading the token
+	*
+	*/
+	private String readSessionToken() throws IOException {
+		Path sessionTokenPath = getUserFilePath("session");
+		return Files.exists(sessionTokenPath) ? Files.readString(sessionTokenPath).trim() : null;
+	}
+	
+	/**
+	*
+	*	This method keeps the session token received after login for the
+	*	next login of the user on the server. The token file can only be
+	*	read and written by its owner, on file systems supporting it.
+	*
+	*	@param String sessionToken the session token
+	*	@throws IOException if an I/O error occurs while writing the token
+	*
+	*/
+	private void writeSessionToken(String sessionToken) throws IOException {
+		Path sessionTokenPath = getUserFilePath("session");
+		Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rw-------");
+		try {
+			if (Files.exists(sessionTokenPath)) {
+				Files.setPosixFilePermissions(sessionTokenPath, ownerOnly);
+			} else {
+				Files.createFile(sessionTokenPath, PosixFilePermissions.asFileAttribute(ownerOnly));
+			}
+		} catch (UnsupportedOperationException e) {
+			System.out.println("Your session token is kept with the default permissions of this file system.");
+		}
+		Files.writeString(sessionTokenPath, sessionToken);
+	}
+	
+	/**
+	*
+	*	This method names a file kept by the client for the user on the 
+	*	server, such as its session token or its local message cache. The
+	*	user name is encoded so that it is a valid file name.
+	*
+	*	@param String prefix the prefix of the file name
+	*	@return Path the path of the file
+	*
+	*/
+	private Path getUserFilePath(String prefix) {
+		String encodedUsername = Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(username.getBytes(StandardCharsets.UTF_8));
+		return Paths.get(prefix + "_" + serverAddress + "_" + serverPort + "_" + encodedUsername + ".txt");
+	}
+	
+	/**
+	*
+	*	This method sends user message to the server. A message is kept as 
+	*	pending until the server acknowledges that it saved it, so that the
+	*	user can keep sending without waiting for the acknowledgements. Once
+	*	too many messages are pending, the message is not sent and the user
+	*	is told to send it again later, so that they can still quit.
 	*
 	*	@throws IOException if an I/O error occurs while sending messages
 	*
 	*/
 	private void sendMessage() throws IOException {
-		System.out.println("Write your message or write 'quit' in order to close the client. "
-				            + "Any message with more than 200 character will be cropped.");
+		renderer.showPrompt();
 		String inputMessage = scanner.nextLine();
 		if (inputMessage.equals("quit")) {
 			isActive = false;
 			receiver.stop();
+		} else if (inputMessage.trim().equals("/scrollback")) {
+			messageCache.getRecentMessages(SCROLLBACK_LIMIT).forEach(message -> renderer.submit(message));
+		} else if (inputMessage.trim().equals("/roster")) {
+			sendFrame("/roster " + rosterView.requestVersion());
+		} else if (inputMessage.startsWith("/")) {
+			sendFrame(inputMessage.trim());
 		} else if (!(inputMessage.isBlank())) {	
 			inputMessage = inputMessage.substring(0, Math.min(inputMessage.length(), MAX_CHAR));
 			LocalDateTime timestamp = LocalDateTime.now();
@@ -200,17 +409,70 @@ public class Client {
 			String header = "[ " + username + " - " + socket.getInetAddress().getHostAddress() 
 							+ ":" + socket.getLocalPort() + " - " + formattedTimestamp + " ] : ";
 			String message = header + inputMessage;
-			toServerCanal.writeUTF(message);
+			if (!pendingMessages.offer(message)) {
+				renderer.submit("Your message was not sent, " + PENDING_MESSAGES_LIMIT 
+						+ " messages are still waiting for the server. Please send it again later : " + inputMessage);
+				return;
+			}
+			sendFrame(message);
 		} else {
-			System.out.println("You can not send empty message. Try again.");
+			renderer.submit("You can not send empty message. Try again.");
 			sendMessage();
 		}
 	}
 	
+	/**
+	*
+	*	This method writes a frame to the server. Writes are serialized since
+	*	the read acknowledgements are sent by another thread than the user's
+	*	messages.
+	*
+	*	@param String frame the frame to send
+	*	@throws IOException if an I/O error occurs while sending the frame
+	*
+	*/
+	private void sendFrame(String frame) throws IOException {
+		synchronized (toServerCanal) {
+			toServerCanal.writeUTF(frame);
+		}
+	}
+	
+	/**
+	*
+	*	This method starts the background thread telling the server, every
+	*	second, the sequence number of the newest message received, if it
+	*	changed. A single number acknowledges all the messages received.
+	*	The thread also asks the server with /history for the ranges of
+	*	messages missing from the local cache.
+	*
+	*/
+	private void startReadAcknowledger() {
+		readAcknowledger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "read-acknowledger");
+			thread.setDaemon(true);
+			return thread;
+		});
+		readAcknowledger.scheduleWithFixedDelay(() -> {
+			long lastSequence = messageCache.getLastSequence();
+			try {
+				if (lastSequence > acknowledgedSequence) {
+					sendFrame("/read " + lastSequence);
+					acknowledgedSequence = lastSequence;
+				}
+				for (long[] range: messageCache.takeMissingRanges()) {
+					sendFrame("/history " + range[0] + " " + range[1]);
+				}
+			} catch (IOException e) {
+				readAcknowledger.shutdown();
+			}
+		}, READ_ACK_PERIOD_MS, READ_ACK_PERIOD_MS, TimeUnit.MILLISECONDS);
+	}
+	
 	/**
 	*
 	*	This class contains the method for receiving messages from the server
-	*	on another thread.
+	*	on another thread. Messages are only queued for the renderer, so that
+	*	reading the socket never waits for the terminal.
 	*
 	*/
 	private class ClientMessageReceiver implements Runnable {
@@ -241,8 +503,21 @@ public class Client {
 	        try {
 	            while (isActive) {
 	                String message = fromServerCanal.readUTF();
-	                if (!(message.isBlank())) {
-	                    System.out.println(message);
+	                if (RosterView.isRosterFrame(message)) {
+	                	message = rosterView.handleFrame(message);
+	                } else if (message.startsWith(MESSAGE_PREFIX)) {
+	                	message = cacheMessage(message);
+	                } else if (message.startsWith(BACKFILL_PREFIX)) {
+	                	message = cacheMissedMessages(message);
+	                } else if (message.startsWith(ACK_PREFIX)) {
+	                	pendingMessages.poll();
+	                	message = null;
+	                } else if (message.startsWith(NACK_PREFIX)) {
+	                	message = "Your message was not sent, " + message.substring(NACK_PREFIX.length()) 
+	                			+ " Please send it again : " + pendingMessages.poll();
+	                }
+	                if (message != null && !(message.isBlank())) {
+	                    renderer.submit(message);
 	                }
 	            }
 	            scanner.close();
@@ -252,6 +527,58 @@ public class Client {
 	        }
 	    }
 	    
+	    /**
+		*
+		* This method adds a message frame received from the server to the
+		* local cache. Frames are made of the sequence number of the message
+		* followed by the message.
+		*
+		* @param String frame the message frame
+		* @return String the message to display
+		*
+		*/
+	    private String cacheMessage(String frame) {
+	    	int separator = frame.indexOf(' ', MESSAGE_PREFIX.length());
+	    	String message = frame.substring(separator + 1);
+	    	try {
+	    		messageCache.append(Long.parseLong(frame.substring(MESSAGE_PREFIX.length(), separator)), message);
+	    	} catch (IOException e) {
+	    		renderer.submit("The message could not be added to your local history.");
+	    	}
+	    	return message;
+	    }
+	    
+	    /**
+		*
+		* This method adds the messages missed by the client, sent by the
+		* server in answer to /history, to the local cache. The first line of
+		* the frame is the range of sequence numbers answered, and each other
+		* line is a sequence number followed by its message. The messages are
+		* not displayed among the new ones, only in the scrollback.
+		*
+		* @param String frame the frame of missed messages
+		* @return String the notice to display, null if no message was added
+		*
+		*/
+	    private String cacheMissedMessages(String frame) {
+	    	String[] lines = frame.split("\n");
+	    	String[] range = lines[0].substring(BACKFILL_PREFIX.length()).split(" ");
+	    	int addedMessages = 0;
+	    	try {
+	    		for (int index = 1; index < lines.length; index++) {
+	    			int separator = lines[index].indexOf(' ');
+	    			if (messageCache.append(Long.parseLong(lines[index].substring(0, separator)), lines[index].substring(separator + 1))) {
+	    				addedMessages++;
+	    			}
+	    		}
+	    		messageCache.resolveMissing(Long.parseLong(range[0]), Long.parseLong(range[1]));
+	    	} catch (IOException e) {
+	    		renderer.submit("The missed messages could not be added to your local history.");
+	    	}
+	    	return addedMessages == 0 ? null 
+	    			: addedMessages + " missed messages were added to your history, type /scrollback to read them.";
+	    }
+	    
 	    /**
 		*
 		* This method stops the runnable message receiver thread
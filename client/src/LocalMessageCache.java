@@ -0,0 +1,340 @@
+/*********************************************************************
+ *
+ * This file java file contains the class LocalMessageCache which
+ * keeps the messages received by a user from a server on disk, keyed
+ * by their server sequence number. At login, the client only asks the
+ * server for the messages newer than the newest one it kept, and the
+ * scrollback is rendered from the cache, ordered by sequence number.
+ * The cache file is bounded : once it exceeds its size limit, only the
+ * newest half of its messages is kept. Messages broadcast at the same
+ * time may arrive out of order, so a message is only skipped if its
+ * sequence number was already received. The sequence numbers skipped
+ * within the scrollback are remembered as missing, and once they did not
+ * arrive for a while, they are handed out as ranges to ask the server.
+ *
+ * file: LocalMessageCache.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class LocalMessageCache {
+
+	private static long MAX_CACHE_BYTES = 1 << 20;
+
+	private static int SCROLLBACK_LIMIT = 200;
+
+	private static int RECENT_SEQUENCES_LIMIT = 1024;
+
+	private static long GAP_GRACE_MS = 2000;
+
+	private static long BACKFILL_RETRY_MS = 10000;
+
+	private static int BACKFILL_LIMIT = 50;
+
+	private Path cachePath;
+
+	private BufferedWriter writer;
+
+	private long cacheBytes = 0;
+
+	private long lastSequence = 0;
+
+	private TreeMap<Long, String> scrollback = new TreeMap<>();
+
+	private TreeMap<Long, Long> missingSequences = new TreeMap<>();
+
+	private ArrayDeque<Long> recentSequences = new ArrayDeque<>();
+
+	private HashSet<Long> receivedSequences = new HashSet<>();
+
+	/**
+	*
+	* Constructs a new LocalMessageCache object.
+	*
+	* @param String cacheName the name of the cache file
+	*
+	*/
+	public LocalMessageCache(String cacheName) {
+		this.cachePath = Paths.get(cacheName);
+	}
+
+	/**
+	*
+	* This method reads the cache file, if it exists, to find the newest
+	* sequence number, the scrollback and the messages missing from it,
+	* then opens it for appending. Each line of the file is a sequence
+	* number followed by its message.
+	*
+	* @throws IOException if an I/O error occurs while reading the cache
+	*
+	*/
+	public synchronized void open() throws IOException {
+		if (Files.exists(cachePath)) {
+			for (String line: Files.readAllLines(cachePath, StandardCharsets.UTF_8)) {
+				int separator = line.indexOf(' ');
+				if (separator > 0) {
+					try {
+						long sequence = Long.parseLong(line.substring(0, separator));
+						lastSequence = Math.max(lastSequence, sequence);
+						addToRecentSequences(sequence);
+						addToScrollback(sequence, line.substring(separator + 1));
+					} catch (NumberFormatException e) {
+						continue;
+					}
+				}
+			}
+			cacheBytes = Files.size(cachePath);
+		}
+		if (!scrollback.isEmpty()) {
+			long requestTime = System.currentTimeMillis() + GAP_GRACE_MS;
+			for (long sequence = Math.max(scrollback.firstKey(), lastSequence - SCROLLBACK_LIMIT); sequence < lastSequence; sequence++) {
+				if (!scrollback.containsKey(sequence)) {
+					missingSequences.put(sequence, requestTime);
+				}
+			}
+		}
+		openWriter();
+	}
+
+	/**
+	*
+	* This method adds a message to the cache, unless a message with the
+	* same sequence number was recently kept. If the message is newer than
+	* the one following the newest message kept, the sequence numbers in
+	* between, within the scrollback, are remembered as missing.
+	*
+	* @param long sequence the sequence number of the message on the server
+	* @param String message the message
+	* @return boolean true if the message was added, false if it was already kept
+	* @throws IOException if an I/O error occurs while writing the cache
+	*
+	*/
+	public synchronized boolean append(long sequence, String message) throws IOException {
+		if (receivedSequences.contains(sequence) || scrollback.containsKey(sequence)) {
+			return false;
+		}
+		if (lastSequence > 0) {
+			long requestTime = System.currentTimeMillis() + GAP_GRACE_MS;
+			for (long missing = Math.max(lastSequence + 1, sequence - SCROLLBACK_LIMIT); missing < sequence; missing++) {
+				missingSequences.put(missing, requestTime);
+			}
+		}
+		missingSequences.remove(sequence);
+		String line = sequence + " " + message;
+		writer.write(line);
+		writer.newLine();
+		writer.flush();
+		cacheBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+		lastSequence = Math.max(lastSequence, sequence);
+		addToRecentSequences(sequence);
+		addToScrollback(sequence, message);
+		missingSequences.headMap(lastSequence - SCROLLBACK_LIMIT).clear();
+		if (cacheBytes > MAX_CACHE_BYTES) {
+			compact();
+		}
+		return true;
+	}
+
+	/**
+	*
+	* This method forgets the missing sequence numbers of a range the server
+	* answered. The messages of the range the server did not send were
+	* filtered out or expired, so they are not asked for again.
+	*
+	* @param long fromSequence the first sequence number of the range
+	* @param long toSequence the last sequence number of the range
+	*
+	*/
+	public synchronized void resolveMissing(long fromSequence, long toSequence) {
+		if (fromSequence <= toSequence) {
+			missingSequences.subMap(fromSequence, true, toSequence, true).clear();
+		}
+	}
+
+	/**
+	*
+	* This method retrieves the ranges of missing sequence numbers to ask
+	* the server, once they did not arrive during a grace period. A range
+	* has at most BACKFILL_LIMIT sequence numbers. The ranges retrieved are
+	* only handed out again if the server did not answer them in time.
+	*
+	* @return List<long[]> the first and last sequence numbers of each range
+	*
+	*/
+	public synchronized List<long[]> takeMissingRanges() {
+		List<long[]> ranges = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		long[] range = null;
+		for (Map.Entry<Long, Long> entry: missingSequences.entrySet()) {
+			if (entry.getValue() > now) {
+				continue;
+			}
+			long sequence = entry.getKey();
+			if (range == null || sequence != range[1] + 1 || sequence - range[0] >= BACKFILL_LIMIT) {
+				range = new long[] {sequence, sequence};
+				ranges.add(range);
+			} else {
+				range[1] = sequence;
+			}
+			entry.setValue(now + BACKFILL_RETRY_MS);
+		}
+		return ranges;
+	}
+
+	/**
+	*
+	* This method empties the cache, for example when the server's database
+	* was replaced and its sequence numbers started over.
+	*
+	* @throws IOException if an I/O error occurs while emptying the cache
+	*
+	*/
+	public synchronized void clear() throws IOException {
+		writer.close();
+		Files.deleteIfExists(cachePath);
+		cacheBytes = 0;
+		lastSequence = 0;
+		scrollback.clear();
+		missingSequences.clear();
+		recentSequences.clear();
+		receivedSequences.clear();
+		openWriter();
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the sequence number of the newest message kept
+	*
+	* @return long lastSequence the sequence number, 0 if the cache is empty
+	*
+	*/
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	*
+	* This method retrieves the newest messages kept, ordered by sequence
+	* number from oldest to newest.
+	*
+	* @param int count the maximum number of messages to retrieve
+	* @return List<String> the newest messages
+	*
+	*/
+	public synchronized List<String> getRecentMessages(int count) {
+		ArrayDeque<String> messages = new ArrayDeque<>();
+		Iterator<String> newestFirst = scrollback.descendingMap().values().iterator();
+		while (newestFirst.hasNext() && messages.size() < count) {
+			messages.addFirst(newestFirst.next());
+		}
+		return new ArrayList<>(messages);
+	}
+
+	/**
+	*
+	* This method closes the cache file.
+	*
+	* @throws IOException if an I/O error occurs while closing the cache
+	*
+	*/
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	*
+	* This method keeps only the newest half of the messages of the cache
+	* file, rewritten in sequence number order.
+	*
+	* @throws IOException if an I/O error occurs while rewriting the cache
+	*
+	*/
+	private void compact() throws IOException {
+		writer.close();
+		TreeMap<Long, String> lines = new TreeMap<>();
+		for (String line: Files.readAllLines(cachePath, StandardCharsets.UTF_8)) {
+			try {
+				lines.put(Long.parseLong(line.substring(0, Math.max(0, line.indexOf(' ')))), line);
+			} catch (NumberFormatException e) {
+				continue;
+			}
+		}
+		ArrayDeque<String> keptLines = new ArrayDeque<>();
+		long keptBytes = 0;
+		for (String line: lines.descendingMap().values()) {
+			if (keptBytes >= MAX_CACHE_BYTES / 2) {
+				break;
+			}
+			keptLines.addFirst(line);
+			keptBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+		}
+		Path temporaryPath = Paths.get(cachePath + ".tmp");
+		Files.write(temporaryPath, keptLines, StandardCharsets.UTF_8);
+		Files.move(temporaryPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		cacheBytes = Files.size(cachePath);
+		openWriter();
+	}
+
+	/**
+	*
+	* This method opens the cache file for appending.
+	*
+	* @throws IOException if an I/O error occurs while opening the cache
+	*
+	*/
+	private void openWriter() throws IOException {
+		writer = Files.newBufferedWriter(cachePath, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	*
+	* This method remembers the sequence number of a message kept, so that
+	* it is not kept twice.
+	*
+	* @param long sequence the sequence number of the message
+	*
+	*/
+	private void addToRecentSequences(long sequence) {
+		recentSequences.addLast(sequence);
+		receivedSequences.add(sequence);
+		if (recentSequences.size() > RECENT_SEQUENCES_LIMIT) {
+			receivedSequences.remove(recentSequences.removeFirst());
+		}
+	}
+
+	/**
+	*
+	* This method adds a message to the scrollback kept in memory, at the
+	* place of its sequence number. Only the newest messages are kept.
+	*
+	* @param long sequence the sequence number of the message
+	* @param String message the message
+	*
+	*/
+	private void addToScrollback(long sequence, String message) {
+		scrollback.put(sequence, message);
+		if (scrollback.size() > SCROLLBACK_LIMIT) {
+			scrollback.pollFirstEntry();
+		}
+	}
+}
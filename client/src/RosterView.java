@@ -0,0 +1,214 @@
+/*********************************************************************
+ *
+ * This file java file contains the class RosterView which keeps the
+ * client's copy of the online users of the chat room. It applies the
+ * coalesced presence frames pushed by the server and the answers to
+ * roster requests, and remembers the roster version it reflects so
+ * that the next roster request only fetches the missing deltas.
+ *
+ * file: RosterView.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+public class RosterView {
+
+	private static int DISPLAYED_NAMES_LIMIT = 50;
+
+	private long knownVersion = -1;
+
+	private long requestedVersion = -1;
+
+	private TreeSet<String> onlineUsers = new TreeSet<>();
+
+	private boolean isApplyingFrames = false;
+
+	private List<String> joinedUsers = new ArrayList<>();
+
+	private List<String> leftUsers = new ArrayList<>();
+
+	/**
+	*
+	* @Getter
+	* This method returns the roster version known by the client and
+	* remembers it as the base of the roster request about to be sent.
+	*
+	* @return long the roster version known by the client, -1 if none
+	*
+	*/
+	public synchronized long requestVersion() {
+		requestedVersion = knownVersion;
+		return knownVersion;
+	}
+
+	/**
+	*
+	* This method verifies if a message received from the server is a
+	* presence or roster frame.
+	*
+	* @param String message the message received from the server
+	* @return boolean true if the message is handled by the roster view
+	*
+	*/
+	public static boolean isRosterFrame(String message) {
+		return message.startsWith("#PRESENCE ") || message.startsWith("#ROSTER ");
+	}
+
+	/**
+	*
+	* This method applies a presence or roster frame. Frames are formatted
+	* as a header "#PRESENCE version index/count" or "#ROSTER version kind
+	* index/count" followed by one line per user, prefixed by '+' or '-'
+	* for deltas. A presence frame is only applied on top of the previous
+	* version, else the roster is marked unknown until the next request.
+	*
+	* @param String frame the frame received from the server
+	* @return String the text to display once the last frame of an update
+	* is applied, null if there is nothing to display
+	*
+	*/
+	public synchronized String handleFrame(String frame) {
+		String[] lines = frame.split("\n");
+		String[] header = lines[0].split(" ");
+		long version = Long.parseLong(header[1]);
+		String kind = header[0].equals("#PRESENCE") ? "presence" : header[2];
+		String[] position = header[header.length - 1].split("/");
+		boolean isFirst = position[0].equals("1");
+		boolean isLast = position[0].equals(position[1]);
+		if (isFirst) {
+			isApplyingFrames = isApplicable(kind, version);
+			joinedUsers.clear();
+			leftUsers.clear();
+			if (isApplyingFrames && kind.equals("full")) {
+				onlineUsers.clear();
+			}
+		}
+		for (int index = 1; index < lines.length; index++) {
+			applyLine(kind, lines[index]);
+		}
+		if (!isLast) {
+			return null;
+		}
+		if (kind.equals("presence")) {
+			if (isApplyingFrames) {
+				knownVersion = version;
+			} else if (version > knownVersion) {
+				knownVersion = -1;
+			}
+			return describePresence();
+		}
+		if (isApplyingFrames) {
+			knownVersion = version;
+		}
+		return describeRoster();
+	}
+
+	/**
+	*
+	* This method verifies if an update can be applied on top of the
+	* roster version known by the client.
+	*
+	* @param String kind the kind of update : presence, full, delta or unchanged
+	* @param long version the roster version reached after the update
+	* @return boolean true if the update must be applied
+	*
+	*/
+	private boolean isApplicable(String kind, long version) {
+		switch (kind) {
+			case "presence":
+				return knownVersion >= 0 && version == knownVersion + 1;
+			case "full":
+				return version > knownVersion;
+			case "delta":
+				return version > knownVersion && knownVersion == requestedVersion;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	*
+	* This method applies one user line of a frame to the roster, if the
+	* frame is applicable, and remembers the users who joined and left.
+	*
+	* @param String kind the kind of update
+	* @param String line the user name, prefixed by '+' or '-' for deltas
+	*
+	*/
+	private void applyLine(String kind, String line) {
+		if (kind.equals("full")) {
+			if (isApplyingFrames) {
+				onlineUsers.add(line);
+			}
+		} else if (line.startsWith("+")) {
+			joinedUsers.add(line.substring(1));
+			if (isApplyingFrames) {
+				onlineUsers.add(line.substring(1));
+			}
+		} else if (line.startsWith("-")) {
+			leftUsers.add(line.substring(1));
+			if (isApplyingFrames) {
+				onlineUsers.remove(line.substring(1));
+			}
+		}
+	}
+
+	/**
+	*
+	* This method describes the users who joined and left the chat room.
+	* Presence frames are described even when they could not be applied.
+	*
+	* @return String the description of the presence update
+	*
+	*/
+	private String describePresence() {
+		StringBuilder description = new StringBuilder();
+		if (!joinedUsers.isEmpty()) {
+			description.append(describeNames(joinedUsers)).append(" joined the room");
+		}
+		if (!leftUsers.isEmpty()) {
+			if (description.length() > 0) {
+				description.append('\n');
+			}
+			description.append(describeNames(leftUsers)).append(" left the chat room.");
+		}
+		return description.length() == 0 ? null : description.toString();
+	}
+
+	/**
+	*
+	* This method describes the online users known by the client.
+	*
+	* @return String the description of the roster
+	*
+	*/
+	private String describeRoster() {
+		if (knownVersion < 0) {
+			return "The roster changed while it was requested. Write '/roster' again.";
+		}
+		return "There is " + onlineUsers.size() + " users in the chat room : "
+				+ describeNames(new ArrayList<>(onlineUsers));
+	}
+
+	/**
+	*
+	* This method joins user names, cropping the list after the display limit.
+	*
+	* @param List<String> names the user names to join
+	* @return String the joined user names
+	*
+	*/
+	private static String describeNames(List<String> names) {
+		if (names.size() <= DISPLAYED_NAMES_LIMIT) {
+			return String.join(", ", names);
+		}
+		return String.join(", ", names.subList(0, DISPLAYED_NAMES_LIMIT))
+				+ " and " + (names.size() - DISPLAYED_NAMES_LIMIT) + " others";
+	}
+}
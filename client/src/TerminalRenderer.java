@@ -0,0 +1,213 @@
+/*********************************************************************
+ *
+ * This file java file contains the class TerminalRenderer which
+ * decouples the reception of messages from their display. The thread
+ * receiving messages only queues them, and a render thread writes all
+ * the queued messages at once every frame. On a terminal whose size is
+ * known, the last row is kept for the prompt, outside of a scroll
+ * region where the messages are written, so that what the user is
+ * typing is never erased nor moved. When more messages arrive than can
+ * be read, the render thread only shows the most recent ones with a
+ * summary of the number of messages it skipped.
+ *
+ * file: TerminalRenderer.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TerminalRenderer {
+
+	private static int FRAME_PERIOD_MS = 16;
+
+	private static int QUEUE_LIMIT = 10000;
+
+	private static int MAX_LINES_PER_SECOND = 100;
+
+	private static int SUMMARY_TAIL = 3;
+
+	private static String PROMPT = "> ";
+
+	private static String SAVE_CURSOR = "\0337";
+
+	private static String RESTORE_CURSOR = "\0338";
+
+	private static String CLEAR_LINE = "\033[2K";
+
+	private static String RESET_SCROLL_REGION = "\033[r";
+
+	private int terminalRows = System.console() != null ? readTerminalRows() : 0;
+
+	private LinkedBlockingQueue<String> pendingLines = new LinkedBlockingQueue<>(QUEUE_LIMIT);
+
+	private long skippedLines = 0;
+
+	private long windowStart = 0;
+
+	private int renderedInWindow = 0;
+
+	private boolean isPromptVisible = false;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	*
+	* This method starts the render thread. On a terminal whose size is
+	* known, the scroll region is set to every row but the last one, which
+	* is kept for the prompt.
+	*
+	*/
+	public void start() {
+		if (terminalRows > 1) {
+			System.out.print("\n\033[1;" + (terminalRows - 1) + "r");
+			System.out.flush();
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "terminal-renderer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this::render, FRAME_PERIOD_MS, FRAME_PERIOD_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	*
+	* This method stops the render thread after writing the queued messages,
+	* and gives the whole terminal back.
+	*
+	*/
+	public void stop() {
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		render();
+		if (terminalRows > 1) {
+			System.out.print(RESET_SCROLL_REGION + "\033[" + terminalRows + ";1H" + CLEAR_LINE);
+			System.out.flush();
+		}
+	}
+
+	/**
+	*
+	* This method queues a message to display. It never blocks : if the
+	* queue is full, the oldest queued message is skipped.
+	*
+	* @param String line the message to display
+	*
+	*/
+	public void submit(String line) {
+		while (!pendingLines.offer(line)) {
+			if (pendingLines.poll() != null) {
+				synchronized (this) {
+					skippedLines++;
+				}
+			}
+		}
+	}
+
+	/**
+	*
+	* This method shows the prompt where the user writes their message. On a
+	* terminal whose size is known, the last row still holding the message
+	* just sent is cleared first.
+	*
+	*/
+	public synchronized void showPrompt() {
+		System.out.print(terminalRows > 1 ? "\033[" + terminalRows + ";1H" + CLEAR_LINE + PROMPT : PROMPT);
+		System.out.flush();
+		isPromptVisible = true;
+	}
+
+	/**
+	*
+	* This method writes all queued messages in a single write. On a
+	* terminal whose size is known, the cursor is saved, the messages are
+	* written at the bottom of the scroll region and the cursor is restored
+	* where the user is typing. Else, they are written under the prompt,
+	* which is drawn again under them, and what the user typed stays in
+	* the line being edited. If the messages exceed the number of lines
+	* per second the user can read, only the last ones are written with a
+	* summary of the skipped ones.
+	*
+	*/
+	private synchronized void render() {
+		long now = System.currentTimeMillis();
+		if (now - windowStart >= 1000) {
+			windowStart = now;
+			renderedInWindow = 0;
+		}
+		List<String> lines = new ArrayList<>();
+		pendingLines.drainTo(lines);
+		int allowedLines = Math.max(0, MAX_LINES_PER_SECOND - renderedInWindow);
+		if (lines.size() > allowedLines) {
+			int shownLines = Math.min(allowedLines, SUMMARY_TAIL);
+			skippedLines += lines.size() - shownLines;
+			lines = lines.subList(lines.size() - shownLines, lines.size());
+		}
+		boolean isSummaryDue = skippedLines > 0 && (!lines.isEmpty() || renderedInWindow == 0);
+		if (lines.isEmpty() && !isSummaryDue) {
+			return;
+		}
+		List<String> frameLines = new ArrayList<>();
+		if (isSummaryDue) {
+			frameLines.add("... " + skippedLines + " messages skipped, the chat room is too busy ...");
+			skippedLines = 0;
+			renderedInWindow++;
+		}
+		frameLines.addAll(lines);
+		StringBuilder frame = new StringBuilder();
+		if (terminalRows > 1) {
+			frame.append(SAVE_CURSOR).append("\033[").append(terminalRows - 1).append(";1H");
+			frameLines.forEach(line -> frame.append('\n').append(line));
+			frame.append(RESTORE_CURSOR);
+		} else {
+			if (isPromptVisible) {
+				frame.append('\n');
+			}
+			frameLines.forEach(line -> frame.append(line).append('\n'));
+			if (isPromptVisible) {
+				frame.append(PROMPT);
+			}
+		}
+		renderedInWindow += lines.size();
+		System.out.print(frame);
+		System.out.flush();
+	}
+
+	/**
+	*
+	* This method reads the number of rows of the terminal of the client.
+	*
+	* @return int the number of rows, 0 if it cannot be read
+	*
+	*/
+	private static int readTerminalRows() {
+		try {
+			Process process = new ProcessBuilder("stty", "size")
+					.redirectInput(ProcessBuilder.Redirect.from(new File("/dev/tty")))
+					.redirectError(ProcessBuilder.Redirect.DISCARD)
+					.start();
+			String size = new String(process.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).trim();
+			return process.waitFor() == 0 ? Integer.parseInt(size.split(" ")[0]) : 0;
+		} catch (IOException | RuntimeException e) {
+			return 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*********************************************************************
+ *
+ * This file java file contains the class AuthService which verifies
+ * the credentials of the users logging in. Password hashing is
+ * expensive on purpose, so verifications and signups run on a small
+ * bounded pool of auth workers : a login storm queues on the pool and
+ * is refused once the queue is full, instead of taking the processors
+ * away from the chat traffic. It also issues signed session tokens
+ * letting a client resume its session without hashing its password.
+ *
+ * file: AuthService.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class AuthService {
+
+	public enum Result { LOGGED_IN, CREATED, INVALID, EXPIRED, BUSY }
+
+	private static int AUTH_QUEUE_LIMIT = 256;
+
+	private static int AUTH_TIMEOUT_S = 10;
+
+	private static long SESSION_DURATION_MS = TimeUnit.DAYS.toMillis(1);
+
+	private static String MAC_ALGORITHM = "HmacSHA256";
+
+	private CredentialStore credentialStore;
+
+	private ThreadPoolExecutor authWorkers;
+
+	private SecretKeySpec sessionKey;
+
+	/**
+	*
+	* Constructs a new AuthService object.
+	*
+	* @param CredentialStore credentialStore the credentials database
+	* @param String sessionSecretName the name of the file containing the key signing session tokens
+	* @throws IOException if an I/O error occurs while reading or creating the session key
+	*
+	*/
+	public AuthService(CredentialStore credentialStore, String sessionSecretName) throws IOException {
+		this.credentialStore = credentialStore;
+		this.sessionKey = new SecretKeySpec(loadSessionSecret(sessionSecretName), MAC_ALGORITHM);
+		int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		AtomicInteger workerCount = new AtomicInteger();
+		this.authWorkers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(AUTH_QUEUE_LIMIT),
+				runnable -> {
+					Thread thread = new Thread(runnable, "auth-worker-" + workerCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	*
+	* This method authenticates a user on the auth workers and waits for
+	* the result. If the user does not exist, the user's account is created.
+	* If the user's record was hashed with an outdated cost, it is hashed again.
+	*
+	* @param String username the user name of the user
+	* @param String password the password of the user
+	* @return Result the result of the authentication, BUSY if the auth
+	* workers could not verify the credentials in time
+	* @throws IOException if an I/O error occurs while reading or writing the credentials
+	*
+	*/
+	public Result authenticate(String username, String password) throws IOException {
+		try {
+			return authenticateAsync(username, password).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	*
+	* This method authenticates a user on the auth workers without waiting
+	* for the result. The result is BUSY if the queue of the auth workers
+	* is full or if the credentials are not verified in time. Once the
+	* result is known, the verification is cancelled, so that a password
+	* still queued when its client was told BUSY is never hashed. A running
+	* verification is not interrupted, since interrupting a thread reading
+	* the credentials store would close the store's channel.
+	*
+	* @param String username the user name of the user
+	* @param String password the password of the user
+	* @return CompletableFuture<Result> the result of the authentication, completed
+	* exceptionally with an UncheckedIOException if the credentials cannot be read or written
+	*
+	*/
+	public CompletableFuture<Result> authenticateAsync(String username, String password) {
+		CompletableFuture<Result> result = new CompletableFuture<>();
+		Future<?> verification;
+		try {
+			verification = authWorkers.submit(() -> {
+				if (result.isDone()) {
+					return;
+				}
+				try {
+					result.complete(verify(username, password));
+				} catch (IOException e) {
+					result.completeExceptionally(new UncheckedIOException(e));
+				} catch (RuntimeException e) {
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.completedFuture(Result.BUSY);
+		}
+		result.whenComplete((verified, exception) -> verification.cancel(false));
+		return result.completeOnTimeout(Result.BUSY, AUTH_TIMEOUT_S, TimeUnit.SECONDS);
+	}
+
+	/**
+	*
+	* This method adds users whose passwords were stored in plain text to
+	* the credentials database. The passwords are hashed with the current
+	* cost on the auth workers, a queue of them at a time, since the server
+	* does not accept clients yet. A user already in the database is kept.
+	*
+	* @param List<String[]> credentials the user name and the password of each user
+	* @return int the number of users added
+	* @throws IOException if an I/O error occurs while writing the credentials
+	*
+	*/
+	public int migrate(List<String[]> credentials) throws IOException {
+		int addedUsers = 0;
+		for (int first = 0; first < credentials.size(); first += AUTH_QUEUE_LIMIT) {
+			List<Future<Boolean>> registrations = new ArrayList<>();
+			for (String[] user: credentials.subList(first, Math.min(credentials.size(), first + AUTH_QUEUE_LIMIT))) {
+				registrations.add(authWorkers.submit(() -> credentialStore.register(user[0],
+						CredentialRecord.create(user[1], CredentialRecord.HASH_ITERATIONS))));
+			}
+			for (Future<Boolean> registration: registrations) {
+				try {
+					addedUsers += registration.get() ? 1 : 0;
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IllegalStateException(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("The migration of the credentials was interrupted.");
+				}
+			}
+		}
+		return addedUsers;
+	}
+
+	/**
+	*
+	* This method resumes the session of a user with the session token the
+	* user received at their last login. No password is hashed, so it does not
+	* need the auth workers.
+	*
+	* @param String username the user name of the user resuming their session
+	* @param String token the session token sent by the client
+	* @return Result LOGGED_IN if the session can be resumed, EXPIRED otherwise
+	*
+	*/
+	public Result resume(String username, String token) {
+		return isValidSessionToken(username, token) ? Result.LOGGED_IN : Result.EXPIRED;
+	}
+
+	/**
+	*
+	* This method issues a session token for a user who just logged in. A
+	* token is made of the user name, its expiry date and the signature of
+	* both, so that it can be verified without any state on the server.
+	*
+	* @param String username the user name of the user
+	* @return String the session token
+	*
+	*/
+	public String issueSessionToken(String username) {
+		String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(username.getBytes(StandardCharsets.UTF_8))
+				+ "." + (System.currentTimeMillis() + SESSION_DURATION_MS);
+		return payload + "." + sign(payload);
+	}
+
+	/**
+	*
+	* This method verifies if a session token was issued to a user by this
+	* server and is not expired.
+	*
+	* @param String username the user name of the user resuming their session
+	* @param String token the session token sent by the client
+	* @return boolean true if the session can be resumed, false otherwise
+	*
+	*/
+	public boolean isValidSessionToken(String username, String token) {
+		int signatureStart = token.lastIndexOf('.');
+		int expiryStart = token.indexOf('.');
+		if (expiryStart < 0 || signatureStart <= expiryStart) {
+			return false;
+		}
+		String payload = token.substring(0, signatureStart);
+		byte[] expectedSignature = sign(payload).getBytes(StandardCharsets.UTF_8);
+		byte[] signature = token.substring(signatureStart + 1).getBytes(StandardCharsets.UTF_8);
+		if (!MessageDigest.isEqual(expectedSignature, signature)) {
+			return false;
+		}
+		try {
+			String tokenUsername = new String(
+					Base64.getUrlDecoder().decode(token.substring(0, expiryStart)), StandardCharsets.UTF_8);
+			long expiry = Long.parseLong(token.substring(expiryStart + 1, signatureStart));
+			return tokenUsername.equals(username) && System.currentTimeMillis() < expiry;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	*
+	* This method verifies the credentials of a user. It runs on an auth worker.
+	*
+	* @param String username the user name of the user
+	* @param String password the password of the user
+	* @return Result the result of the verification
+	* @throws IOException if an I/O error occurs while reading or writing the credentials
+	*
+	*/
+	private Result verify(String username, String password) throws IOException {
+		CredentialRecord record = credentialStore.find(username);
+		if (record == null) {
+			if (credentialStore.register(username, CredentialRecord.create(password, CredentialRecord.HASH_ITERATIONS))) {
+				return Result.CREATED;
+			}
+			record = credentialStore.find(username);
+		}
+		if (!record.matches(password)) {
+			return Result.INVALID;
+		}
+		if (record.isOutdated()) {
+			credentialStore.replace(username, CredentialRecord.create(password, CredentialRecord.HASH_ITERATIONS));
+		}
+		return Result.LOGGED_IN;
+	}
+
+	/**
+	*
+	* This method signs the payload of a session token.
+	*
+	* @param String payload the payload to sign
+	* @return String the signature encoded in base 64
+	*
+	*/
+	private String sign(String payload) {
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(sessionKey);
+			byte[] signature = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(MAC_ALGORITHM + " is not available.", e);
+		}
+	}
+
+	/**
+	*
+	* This method reads the key signing the session tokens, creating a
+	* random one if the file does not exist yet. Since anyone reading the
+	* key could forge a token for any user, the key file can only be read
+	* and written by its owner, on file systems supporting it.
+	*
+	* @param String sessionSecretName the name of the key file
+	* @return byte[] the key
+	* @throws IOException if an I/O error occurs while reading or writing the key
+	*
+	*/
+	private static byte[] loadSessionSecret(String sessionSecretName) throws IOException {
+		Path secretPath = Paths.get(sessionSecretName);
+		Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rw-------");
+		boolean isNewSecret = !Files.exists(secretPath);
+		try {
+			if (isNewSecret) {
+				Files.createFile(secretPath, PosixFilePermissions.asFileAttribute(ownerOnly));
+			} else {
+				Files.setPosixFilePermissions(secretPath, ownerOnly);
+			}
+		} catch (UnsupportedOperationException e) {
+			System.out.println("The session key is kept with the default permissions of this file system : " + sessionSecretName);
+			if (isNewSecret) {
+				Files.createFile(secretPath);
+			}
+		}
+		if (!isNewSecret) {
+			return Files.readAllBytes(secretPath);
+		}
+		byte[] secret = new byte[32];
+		new SecureRandom().nextBytes(secret);
+		Files.write(secretPath, secret);
+		return secret;
+	}
+}
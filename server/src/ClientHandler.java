@@ -5,29 +5,43 @@
  * the chat application server. It manages the communication 
  * with a specific client, validates the client's credentials,
  * handles client messages reception, and broadcasts messages
- * to other connected clients.
+ * to other connected clients according to their subscriptions.
  *
  * file: ClientHandler.java
  * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
  * date: 18 may 2023
- * modified: 21 may 2023
+ * modified: 18 october 2026
  *
  **********************************************************************/
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.DataOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class ClientHandler extends Thread {
 
-	private static int LIMIT = 15;
+	private static String HISTORY_REQUEST_PREFIX = "/history ";
 	
-	private static int FIRST_MESSAGE = 0;
+	private static String SESSION_PREFIX = "#SESSION ";
+
+	private static String LOGIN_ABORTED_PREFIX = "Login aborted : ";
+	
+	private static String ACK_PREFIX = "#ACK ";
+	
+	private static String NACK_PREFIX = "#NACK ";
+	
+	private static int ARCHIVE_LIMIT = 15;
+	
+	private static String BACKFILL_PREFIX = "#BACKFILL ";
+	
+	private static int BACKFILL_LIMIT = 50;
+	
+	private static int MAX_FRAME_CHARS = 21000;
 	
 	private boolean isActive = true;
 	
@@ -37,78 +51,178 @@ public class ClientHandler extends Thread {
 	
 	private String password;
 	
-	private String userCredentialsDBName;
+	private String sessionToken;
 	
-	private String messagesDBName;
-
-	private ConcurrentHashMap<String, String> usersCredentials;
+	private AuthService authService;
 	
-	private ConcurrentHashMap<String, ArrayList<String>> messagesSync;
+	private MessageHistory messageHistory;
 	
 	private ConcurrentHashMap<String, ClientHandler> connectedClients;
 	
+	private PresenceTracker presenceTracker;
+	
+	private TrafficRecorder trafficRecorder;
+	
+	private DeliveryTracker deliveryTracker;
+	
+	private int connection;
+	
+	private LoginPipeline loginPipeline;
+	
+	private long handshakeTimeoutMs;
+	
+	private long handshakeDeadline;
+	
+	private long knownSequence;
+	
 	private DataInputStream fromClientCanal;
 	
 	private DataOutputStream toClientCanal;
 	
+	private final Object toClientCanalLock = new Object();
+	
+	private volatile SubscriptionFilter subscriptionFilter = SubscriptionFilter.NONE;
+	
+	private volatile long joinedSequence = -1;
+	
 	/**
 	*
 	* Constructs a new ClientHandler object.
 	* 
 	* @param Socket socket the client socket
-	* @param ConcurrentHashMap<String, String> usersCredentials the concurrent hash map containing user credentials
-	* @param userCredentialsDBName the name of the user credentials database
-	* @param ConcurrentHashMap<String, ArrayList<String>> messagesSync the concurrent hash map for synchronized messages
-	* @param String messagesDBName the name of the messages database
+	* @param AuthService authService the service verifying the user credentials
+	* @param MessageHistory messageHistory the history of the chat room
 	* @param ConcurrentHashMap<String, ClientHandler> connectedClients the concurrent hash map of connected clients
+	* @param PresenceTracker presenceTracker the tracker coalescing logins and logouts
+	* @param TrafficRecorder trafficRecorder the recorder of the traffic received by the server
+	* @param DeliveryTracker deliveryTracker the tracker of the persist and delivery latencies
 	* 
 	*/
 	public ClientHandler(
 			Socket socket, 
-			ConcurrentHashMap<String, String> usersCredentials, 
-			String userCredentialsDBName,
-			ConcurrentHashMap<String, ArrayList<String>> messagesSync,
-			String messagesDBName,
-			ConcurrentHashMap<String, ClientHandler> connectedClients) {
+			AuthService authService,
+			MessageHistory messageHistory,
+			ConcurrentHashMap<String, ClientHandler> connectedClients,
+			PresenceTracker presenceTracker,
+			TrafficRecorder trafficRecorder,
+			DeliveryTracker deliveryTracker) {
 		this.socket = socket;
-		this.usersCredentials = usersCredentials;
-		this.userCredentialsDBName = userCredentialsDBName;
-		this.messagesSync = messagesSync;
-		this.messagesDBName = messagesDBName;
+		this.authService = authService;
+		this.messageHistory = messageHistory;
 		this.connectedClients = connectedClients;
+		this.presenceTracker = presenceTracker;
+		this.trafficRecorder = trafficRecorder;
+		this.deliveryTracker = deliveryTracker;
 	}
 	
 	/**
 	*
-	* This method runs the client handler thread.
+	* This method runs the client handler thread : it logs in the client
+	* through the stages of the login pipeline, then receives the messages
+	* and commands of the client until it leaves.
 	* 
 	*/
 	public void run() {
+		if (!loginPipeline.logIn(this)) {
+			return;
+		}
+		presenceTracker.markChanged(username);
 		try {
-			setUpCommunicationCanals();
-			validateClientCredentials();
-			connectedClients.put(username, this);
-			String byeMessage = username + " has left the chat room.";
 			while (isActive) {
 				try {
 					String message = fromClientCanal.readUTF();
-					broadcastMessage(message, true);
+					trafficRecorder.recordFrame(connection, message);
+					if (message.startsWith("/")) {
+						handleCommand(message);
+					} else {
+						broadcastMessage(message);
+					}
 				} catch (IOException e) {		
 					isActive = false;
-					connectedClients.remove(username);
-					broadcastMessage(byeMessage, false);
+					connectedClients.remove(username, this);
+					presenceTracker.markChanged(username);
+					System.out.println(username + " has left the chat room.");
 				}
 			}	
-		} catch (IOException e) {
-			System.out.println("User quit server without logging in.");
 		} finally {
-			try {
-				socket.close();
-			} catch (IOException e) {
-				System.out.println("An error occured : \n");
-				e.printStackTrace();
-			}
+			closeConnection();
+		}
+	}
+	
+	/**
+	*
+	* This method starts the thread of the client, once its connection is
+	* accepted, which logs it in through the stages of a login pipeline.
+	* 
+	* @param LoginPipeline loginPipeline the login pipeline
+	* 
+	*/
+	public void startLogin(LoginPipeline loginPipeline) {
+		this.loginPipeline = loginPipeline;
+		start();
+	}
+	
+	/**
+	*
+	* This method starts the login of the client. The client has until the
+	* handshake timeout to send its credentials, after which any read of
+	* the login times out. The timeout starts again each time the client
+	* is asked for its credentials again.
+	* 
+	* @param long handshakeTimeoutMs the time the client has to complete each step of its login, in milliseconds
+	* @throws IOException if an I/O error occurs while setting up the canals
+	* 
+	*/
+	public void beginHandshake(long handshakeTimeoutMs) throws IOException {
+		this.handshakeTimeoutMs = handshakeTimeoutMs;
+		restartHandshakeDeadline();
+		connection = trafficRecorder.recordConnection();
+		setUpCommunicationCanals();
+	}
+	
+	/**
+	*
+	* This method tells if the deadline of the login of the client passed.
+	* 
+	* @return boolean true if the login of the client is late
+	* 
+	*/
+	public boolean isHandshakeExpired() {
+		return getHandshakeRemainingMs() <= 0;
+	}
+	
+	/**
+	*
+	* @Getter
+	* This method gets the time left before the deadline of the login
+	* 
+	* @return long the time left, in milliseconds, negative if the login is late
+	* 
+	*/
+	public long getHandshakeRemainingMs() {
+		return handshakeDeadline - System.currentTimeMillis();
+	}
+	
+	/**
+	*
+	* This method ends the login of a client which quit, was too late or
+	* could not be handled, and closes its connection. The client is told
+	* why if it is still connected, so that it can log in again.
+	* 
+	* @param String reason the reason ending the login
+	* 
+	*/
+	public void abortHandshake(String reason) {
+		if (username != null) {
+			connectedClients.remove(username, this);
+		}
+		System.out.println("User quit server without logging in : " + reason);
+		try {
+			toClientCanal.writeUTF(LOGIN_ABORTED_PREFIX + reason);
+		} catch (IOException e) {
+			System.out.println("The client could not be told why its login ended.");
 		}
+		closeConnection();
 	}
 	
 	/**
@@ -123,6 +237,20 @@ public class ClientHandler extends Thread {
 		return username;
 	}
 	
+	/**
+	 * 
+	 * @Getter
+	 * This method tells if the client joined the room, which happens once
+	 * the old messages were sent to it. Until then, no broadcast nor
+	 * presence update is sent to it, even though its user name is taken.
+	 * 
+	 * @return boolean true if the client joined the room
+	 * 
+	 */
+	public boolean isJoined() {
+		return joinedSequence >= 0;
+	}
+	
 	/**
 	 * 
 	 * @Getter
@@ -136,6 +264,56 @@ public class ClientHandler extends Thread {
 		return toClientCanal;
 	}
 	
+	/**
+	 * 
+	 * @Getter
+	 * This method gets the instance subscription filter attribute
+	 * evaluated before any broadcast is sent to the client
+	 * 
+	 * @return SubscriptionFilter subscriptionFilter the client's subscriptions
+	 * 
+	 */
+	public SubscriptionFilter getSubscriptionFilter() {
+		return subscriptionFilter;
+	}
+	
+	/**
+	 * 
+	 * This method writes a frame on the communication canal going to the
+	 * client instance. Writes are serialized since every other client
+	 * handler may broadcast to this client at the same time.
+	 * 
+	 * @param String frame the frame to send
+	 * @throws IOException if an I/O error occurs while sending the frame
+	 * 
+	 */
+	public void sendFrame(String frame) throws IOException {
+		synchronized (toClientCanalLock) {
+			toClientCanal.writeUTF(frame);
+			toClientCanal.flush();
+		}
+	}
+	
+	/**
+	 * 
+	 * This method writes the frames of a single answer on the communication
+	 * canal going to the client instance. They are written while holding
+	 * the lock of the canal, so that no other frame is written between them
+	 * and the client receives them in a row.
+	 * 
+	 * @param List<String> frames the frames to send
+	 * @throws IOException if an I/O error occurs while sending the frames
+	 * 
+	 */
+	public void sendFrames(List<String> frames) throws IOException {
+		synchronized (toClientCanalLock) {
+			for (String frame: frames) {
+				toClientCanal.writeUTF(frame);
+			}
+			toClientCanal.flush();
+		}
+	}
+	
 	/**
 	 * 
 	 * This method sets up the communication canals for sending and receiving 
@@ -151,156 +329,525 @@ public class ClientHandler extends Thread {
 	
 	/**
 	 * 
-	 * This method validates the client's credentials for authentication. If 
-	 * the password is wrong, it sends message to client to try again. Else,
-	 * if user name is not in the credentials database, it creates a new
-	 * user, saves the new credentials, logs in the user and sends old message
-	 * to client. Finally, if the user already exists and the password received 
-	 * from client is valid, it logs in the user and sends old messages. It also
-	 * verifies if users is already log in and send an error message to the 
-	 * user trying to log in more than once at the same time.
+	 * This method reads the credentials of the client, which is the first
+	 * stage of its login. The client sends its user name, its password and
+	 * the session token it received at its last login, in separate frames.
+	 * The token is empty when the client logs in with its password. If the
+	 * user is already logged in, an error message is sent to the client
+	 * and it is read again, so that no password is hashed for nothing.
 	 *
-	 * @throws IOException if an I/O error occurs during the validation process
+	 * @throws IOException if an I/O error occurs or the login is late
 	 * 
 	 */
-	private void validateClientCredentials() throws IOException {
-		username = fromClientCanal.readUTF();
-		password = fromClientCanal.readUTF();
+	public void readCredentials() throws IOException {
+		while (true) {
+			limitReadToHandshake();
+			username = fromClientCanal.readUTF();
+			password = fromClientCanal.readUTF();
+			sessionToken = fromClientCanal.readUTF();
+			if (!connectedClients.containsKey(username)) {
+				return;
+			}
+			System.out.println(username + " attempted to log in more than once.\n"
+					+ "The attempt was blocked.");
+			toClientCanal.writeUTF("This user is already logged in.");
+			restartHandshakeDeadline();
+		}
+	}
+	
+	/**
+	 * 
+	 * This method verifies the credentials of the client, which is the
+	 * second stage of its login. A session token is verified at once, and
+	 * a password by the auth workers of the authentication service : if 
+	 * the user name is not in the credentials database, a new user is 
+	 * created. The result is BUSY if the auth workers are overloaded.
+	 *
+	 * @return CompletableFuture<AuthService.Result> the result of the verification
+	 * 
+	 */
+	public CompletableFuture<AuthService.Result> verifyCredentials() {
+		if (!sessionToken.isEmpty()) {
+			return CompletableFuture.completedFuture(authService.resume(username, sessionToken));
+		}
+		return authService.authenticateAsync(username, password);
+	}
+	
+	/**
+	 * 
+	 * This method registers the client according to the verification of its
+	 * credentials, which is the third stage of its login. If they are valid,
+	 * the user name is taken atomically, so that two simultaneous logins of
+	 * the same user cannot both succeed, and the client is sent a new session
+	 * token. Else, the client is told why and asked to try again, and has a
+	 * whole handshake timeout to do so.
+	 *
+	 * @param AuthService.Result result the result of the verification
+	 * @return boolean true if the client is logged in, false if its credentials must be read again
+	 * @throws IOException if an I/O error occurs while answering the client
+	 * 
+	 */
+	public boolean register(AuthService.Result result) throws IOException {
 		boolean isValidPassword = false;
-		while (!isValidPassword) {
-			boolean isAlreadyConnected = connectedClients.containsKey(username);
-			boolean isExistantUser = usersCredentials.containsKey(username);
-			if (isAlreadyConnected) {
-				System.out.println(username + " attempted to log in more than once.\n"
-						+ "The attempt was blocked.");
-				toClientCanal.writeUTF("This user is already logged in.");
-				username = fromClientCanal.readUTF();
-				password = fromClientCanal.readUTF();
-			} else if (isExistantUser && !(isAlreadyConnected)) {
-				if(password.equals(usersCredentials.get(username))) {
+		switch (result) {
+			case LOGGED_IN:
+				if (takeUsername()) {
 					toClientCanal.writeUTF("Login Successful: Welcome to the chat room " + username);
-					String ExistingUserMessage = username + " has joined the room";
-					broadcastMessage(ExistingUserMessage, false);
-					sendOldMessagesAfterLogin();
+					System.out.println(username + " has joined the room");
 					isValidPassword = true;
-				} else {
-					toClientCanal.writeUTF("Invalid password : please try again.");
-					System.out.println("A user tried to log in with the wrong credentials.");
-					username = fromClientCanal.readUTF();
-					password = fromClientCanal.readUTF();
 				}
-			} else {
-				usersCredentials.put(username, password);
-				addNewUserToCredentialsDB(username, password);
-				toClientCanal.writeUTF("Account Created Successfully : Welcome to the chat room " + username);
-				String NewUserMessage = "New user " + username + " has joined the room";
-				broadcastMessage(NewUserMessage, false);
-				sendOldMessagesAfterLogin();
-				isValidPassword = true;
+				break;
+			case CREATED:
+				if (takeUsername()) {
+					toClientCanal.writeUTF("Account Created Successfully : Welcome to the chat room " + username);
+					System.out.println("New user " + username + " has joined the room");
+					isValidPassword = true;
+				}
+				break;
+			case INVALID:
+				toClientCanal.writeUTF("Invalid password : please try again.");
+				System.out.println("A user tried to log in with the wrong credentials.");
+				break;
+			case EXPIRED:
+				toClientCanal.writeUTF("Session expired : please try again.");
+				break;
+			default:
+				toClientCanal.writeUTF("Server busy : please try again.");
+				System.out.println("A login was refused since the auth workers are overloaded.");
+				break;
+		}
+		if (isValidPassword) {
+			trafficRecorder.recordLogin(connection, username, !sessionToken.isEmpty());
+			toClientCanal.writeUTF(SESSION_PREFIX + authService.issueSessionToken(username));
+			password = null;
+			sessionToken = null;
+		} else {
+			restartHandshakeDeadline();
+		}
+		return isValidPassword;
+	}
+	
+	/**
+	 * 
+	 * This method reads the history request of the client, which gives the
+	 * sequence number of the newest message kept in its local cache.
+	 *
+	 * @throws IOException if an I/O error occurs or the login is late
+	 * 
+	 */
+	public void readHistoryRequest() throws IOException {
+		limitReadToHandshake();
+		String historyRequest = fromClientCanal.readUTF();
+		knownSequence = 0;
+		if (historyRequest.startsWith(HISTORY_REQUEST_PREFIX)) {
+			try {
+				knownSequence = Long.parseLong(historyRequest.substring(HISTORY_REQUEST_PREFIX.length()).trim());
+			} catch (NumberFormatException e) {
+				knownSequence = 0;
 			}
 		}
 	}
 	
 	/**
 	 * 
-	* This method adds a new user to the credentials database.
+	 * This method replays the old messages to the client, which is the last
+	 * stage of its login. The client then joins the room, and its reads no
+	 * longer time out.
+	 *
+	 * @throws IOException if an I/O error occurs while sending the messages
+	 * 
+	 */
+	public void replayHistory() throws IOException {
+		sendOldMessagesAfterLogin();
+		socket.setSoTimeout(0);
+	}
+	
+	/**
+	 * 
+	 * This method limits the next reads of the login to the time left
+	 * before its deadline.
+	 *
+	 * @throws SocketTimeoutException if the deadline of the login passed
+	 * @throws IOException if the timeout of the socket cannot be set
+	 * 
+	 */
+	private void limitReadToHandshake() throws IOException {
+		long remainingMs = getHandshakeRemainingMs();
+		if (remainingMs <= 0) {
+			throw new SocketTimeoutException("The login took too long.");
+		}
+		socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, remainingMs));
+	}
+	
+	/**
+	 * 
+	 * This method gives the client a whole handshake timeout again, when it
+	 * is asked for its credentials again.
+	 * 
+	 */
+	private void restartHandshakeDeadline() {
+		handshakeDeadline = System.currentTimeMillis() + handshakeTimeoutMs;
+	}
+	
+	/**
+	 * 
+	 * This method closes the connection with the client.
+	 * 
+	 */
+	private void closeConnection() {
+		trafficRecorder.recordDisconnection(connection);
+		try {
+			socket.close();
+		} catch (IOException e) {
+			System.out.println("An error occured : \n");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	*
+	* This method takes the user name of the client in the connected clients,
+	* unless another client already took it, in which case the client is
+	* told that the user is already logged in.
 	* 
-	* @param String user name 
-	* @param String password 
+	* @return boolean true if the user name was taken by this client
+	* @throws IOException if an I/O error occurs while answering the client
 	* 
 	*/
-	private void addNewUserToCredentialsDB(String username,String password) {
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(userCredentialsDBName, true))) {
-            writer.write(username + ":" + password);
-            writer.newLine();
-        } catch (IOException e) {
-            System.out.println("An error occurred while adding new credentials to the credentials database.");
-            e.printStackTrace();
-            System.out.format("Try again.");
-			System.exit(1);
-        }
+	private boolean takeUsername() throws IOException {
+		if (connectedClients.putIfAbsent(username, this) == null) {
+			return true;
+		}
+		System.out.println(username + " attempted to log in more than once.\n"
+				+ "The attempt was blocked.");
+		toClientCanal.writeUTF("This user is already logged in.");
+		return false;
 	}
 	
 	/**
 	*
 	* This method sends up to 15 most recent messages to the client after login.
+	* The client sent the sequence number of the newest message kept in its
+	* local cache, and only the messages newer than it are sent. The answer
+	* starts with the sequence number of the newest message of the server, 
+	* followed by one line per message prefixed by its sequence number. The
+	* answer is built, and the client joins the room, while holding the
+	* history's lock : every message added before is in the answer and every
+	* message added after is broadcast to the client, so none is lost. A
+	* message added just before may still be broadcast after, so the client
+	* is only sent the messages newer than those of the answer, and none is
+	* sent twice. The answer is sent after the history's lock is released,
+	* so that a slow client never holds it, but while holding the lock of
+	* the client's canal, so that no broadcast reaches the client before it.
 	* 
 	* @throws IOException if an I/O error occurs while sending the messages
 	* 
 	*/
 	private void sendOldMessagesAfterLogin() throws IOException {
-		StringBuilder oldMessages = new StringBuilder();
-		getOldMessages().forEach(message -> oldMessages.append(message).append("\n"));
-		toClientCanal.writeUTF("You have " + getOldMessages().size() + " old messages\n" + oldMessages);
-		
+		synchronized (toClientCanalLock) {
+			StringBuilder oldMessages;
+			synchronized (messageHistory) {
+				oldMessages = new StringBuilder("#HISTORY " + messageHistory.getLastSequence());
+				messageHistory.getMessagesAfter(knownSequence).forEach(message -> oldMessages.append("\n").append(message));
+				joinedSequence = messageHistory.getLastSequence();
+			}
+			toClientCanal.writeUTF(oldMessages.toString());
+			toClientCanal.flush();
+		}
 	}
 	
 	/**
 	*
- 	* This method adds new message to the message's database
+ 	* This method adds new message to the message's database. If it cannot
+ 	* be added, the error is reported but the server keeps running, and the
+ 	* sender is told that its message was not saved.
  	* 
  	* @param String message
+ 	* @return long the sequence number of the message, -1 if it could not be added
  	* 
  	*/
-	private void addNewMessageToMessagesDB (String message) {
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(messagesDBName, true))) {
-            writer.write(message);
-            writer.newLine();
+	private long addNewMessageToMessagesDB (String message) {
+		long receivedNanos = System.nanoTime();
+		try {
+			long sequence = messageHistory.append(message);
+			deliveryTracker.recordPersist(sequence, receivedNanos);
+			return sequence;
         } catch (IOException e) {
             System.out.println("An error occurred while adding new message to messages database.");
             e.printStackTrace();
-            System.out.format("Try again.");
-			System.exit(1);
+            deliveryTracker.recordFailedPersist();
+			return -1;
         }
 	}
 	
 	/**
 	*
-	* Broadcasts a message to all connected clients only if message from
-	* user is not quit. Also, it adds the message to the message database
-	* if the incoming message is from a client. If the message is not from
-	* a client but from the server regarding new connections or 
-	* disconnections, it is also broadcast to all connected user but it
-	* is not added to the message's database.
+	* This method handles a command sent by the client. Commands start with
+	* '/' and change the client's subscriptions, request the roster of the
+	* chat room or read the messages log. They are answered to the client
+	* only and are never broadcast nor added to the message database. The
+	* client also acknowledges the newest message it received with /read,
+	* which is not answered, and asks with /history for the messages it
+	* missed between two sequence numbers.
+	* 
+	* @param String command the command received from the client
+	* @throws IOException if an I/O error occurs while answering the client
+	* 
+	*/
+	private void handleCommand(String command) throws IOException {
+		String[] arguments = command.trim().split("\\s+", 2);
+		String argument = arguments.length == 2 ? arguments[1] : "";
+		switch (arguments[0]) {
+			case "/mute":
+			case "/unmute":
+				if (argument.isEmpty()) {
+					sendFrame("Server : usage " + arguments[0] + " <username>");
+					return;
+				}
+				subscriptionFilter = subscriptionFilter.withMutedUser(username, argument, arguments[0].equals("/mute"));
+				break;
+			case "/filter":
+			case "/unfilter":
+				if (argument.isEmpty()) {
+					sendFrame("Server : usage " + arguments[0] + " <keyword>");
+					return;
+				}
+				subscriptionFilter = subscriptionFilter.withKeyword(username, argument, arguments[0].equals("/filter"));
+				break;
+			case "/mentions":
+				if (!(argument.equals("on") || argument.equals("off"))) {
+					sendFrame("Server : usage /mentions on|off");
+					return;
+				}
+				subscriptionFilter = subscriptionFilter.withMentionsOnly(username, argument.equals("on"));
+				break;
+			case "/presence":
+				if (!(argument.equals("on") || argument.equals("off"))) {
+					sendFrame("Server : usage /presence on|off");
+					return;
+				}
+				subscriptionFilter = subscriptionFilter.withPresenceSuppressed(username, argument.equals("off"));
+				break;
+			case "/filters":
+				break;
+			case "/filterstats":
+				sendFrame("Server : " + SubscriptionFilter.describeStatistics());
+				return;
+			case "/logstats":
+				sendFrame("Server : " + messageHistory.getMessageLog().describeStatistics());
+				return;
+			case "/read":
+				try {
+					deliveryTracker.acknowledgeRead(username, Long.parseLong(argument));
+				} catch (NumberFormatException e) {
+					sendFrame("Server : usage /read <sequence number>");
+				}
+				return;
+			case "/deliverystats":
+				sendFrame("Server : " + deliveryTracker.describeStatistics());
+				return;
+			case "/archive":
+				try {
+					sendArchivedMessages(Long.parseLong(argument));
+				} catch (NumberFormatException e) {
+					sendFrame("Server : usage /archive <sequence number>");
+				}
+				return;
+			case "/history":
+				try {
+					String[] range = argument.split("\\s+");
+					sendMissedMessages(Long.parseLong(range[0]), Long.parseLong(range[range.length - 1]));
+				} catch (NumberFormatException e) {
+					sendFrame("Server : usage /history <first sequence number> <last sequence number>");
+				}
+				return;
+			case "/roster":
+				long knownVersion = -1;
+				try {
+					knownVersion = argument.isEmpty() ? -1 : Long.parseLong(argument);
+				} catch (NumberFormatException e) {
+					sendFrame("Server : usage /roster [known version]");
+					return;
+				}
+				sendFrames(presenceTracker.getRosterFrames(knownVersion));
+				return;
+			default:
+				sendFrame("Server : available commands are /mute <username>, /unmute <username>, "
+						+ "/filter <keyword>, /unfilter <keyword>, /mentions on|off, /presence on|off, "
+						+ "/filters, /filterstats, /roster, /archive <sequence number>, /logstats and /deliverystats.");
+				return;
+		}
+		sendFrame("Server : your subscriptions are " + subscriptionFilter.describe());
+	}
+	
+	/**
+	*
+	* This method sends to the client the messages of the log starting at
+	* a sequence number, each prefixed by its own sequence number. They
+	* are read from the segments of the log, compressed or not.
+	* 
+	* @param long sequence the sequence number of the first message
+	* @throws IOException if an I/O error occurs while reading the log or answering the client
+	* 
+	*/
+	private void sendArchivedMessages(long sequence) throws IOException {
+		MessageLog messageLog = messageHistory.getMessageLog();
+		long firstSequence = Math.max(sequence, messageLog.getFirstSequence());
+		StringBuilder frame = new StringBuilder("Server : messages from " + firstSequence + " :");
+		for (String message: messageLog.read(firstSequence, ARCHIVE_LIMIT)) {
+			frame.append('\n').append(firstSequence++).append(' ').append(message);
+		}
+		sendFrame(frame.toString());
+	}
+	
+	/**
+	*
+	* This method sends to the client the messages of the log between two
+	* sequence numbers that its subscription filter accepts, so that the
+	* client can fill the gaps of its local cache. The frame starts with
+	* the range of sequence numbers it covers : the messages of the range
+	* that are not in the frame were filtered out or expired, and must not
+	* be asked for again. At most BACKFILL_LIMIT messages are read, and
+	* the range is cut short if the frame would get too long. A message too
+	* long to fit in a frame on its own is skipped.
+	* 
+	* @param long fromSequence the sequence number of the first message missed
+	* @param long toSequence the sequence number of the last message missed
+	* @throws IOException if an I/O error occurs while reading the log or answering the client
+	* 
+	*/
+	private void sendMissedMessages(long fromSequence, long toSequence) throws IOException {
+		MessageLog messageLog = messageHistory.getMessageLog();
+		long lastSequence = Math.min(toSequence, fromSequence + BACKFILL_LIMIT - 1);
+		long sequence = Math.max(fromSequence, messageLog.getFirstSequence());
+		StringBuilder lines = new StringBuilder();
+		if (sequence <= lastSequence) {
+			for (String message: messageLog.read(sequence, (int) (lastSequence - sequence + 1))) {
+				String sender = getMessageSender(message);
+				if (sender.equals(username) || subscriptionFilter.accepts(sender, getMessageBody(message))) {
+					String line = "\n" + sequence + " " + message;
+					if (lines.length() > 0 && lines.length() + line.length() > MAX_FRAME_CHARS) {
+						lastSequence = sequence - 1;
+						break;
+					}
+					if (line.length() <= MAX_FRAME_CHARS) {
+						lines.append(line);
+					}
+				}
+				sequence++;
+			}
+		}
+		sendFrame(BACKFILL_PREFIX + fromSequence + " " + lastSequence + lines);
+	}
+	
+	/**
+	*
+	* Adds a message of the client to the message database and broadcasts
+	* it to all connected clients. The message is sent with the sequence
+	* number assigned by the history, so that clients can keep it in their
+	* local cache. Every recipient's subscription filter is evaluated before
+	* anything is written on its socket, and the sender always receives its
+	* own messages.
 	* 
 	* @param String message the message to be broadcasted
-	* @param boolean isClientMessage indicates if the message is from a client
 	* 
 	*/
-	private void broadcastMessage(String message, boolean isClientMessage) {
+	private void broadcastMessage(String message) {
 		System.out.println(message);
-		if (isClientMessage) {
-			addNewMessageToMessagesDB(message);
-			ArrayList<String> updatedList = getOldMessages();
-			if (updatedList.size() == LIMIT) {
-				updatedList.remove(FIRST_MESSAGE);
-			}
-			updatedList.add(message);
-			messagesSync.replace("message", updatedList);
+		if (MessageHistory.hasLineBreak(message)) {
+			rejectMessage("the message cannot contain line breaks.");
+			return;
+		}
+		long sequence = addNewMessageToMessagesDB(message);
+		if (!acknowledgeMessage(sequence)) {
+			return;
 		}
+		String frame = "#MSG " + sequence + " " + message;
+		String body = getMessageBody(message);
 		for (ClientHandler client: connectedClients.values()) {
+			if (!client.isJoined() || sequence <= client.joinedSequence
+					|| (client != this && !client.getSubscriptionFilter().accepts(username, body))) {
+				continue;
+			}
 			try {
-				client.getToClientCanal().writeUTF(message);
-				client.getToClientCanal().flush();
+				client.sendFrame(frame);
 			} catch (IOException e) {
 				System.out.println("An error occurred while sending to " + client.username 
-									+ " new message form "+ username + ".");
-				e.printStackTrace();
-				System.out.format("Try again.");
-				System.exit(1);
+									+ " new message form "+ username + ", who is leaving the chat room.");
 			}
 		}
 	}
 	
 	/**
 	*
-	* Retrieves the list of the 15 most recent messages from the 
-	* synchronized messages database.
+	* This method tells the sender whether its message was saved, before the
+	* message is broadcast. The acknowledgement carries the sequence number
+	* of the message. Since the messages of a client are handled in the
+	* order they were sent, the client matches the acknowledgements with
+	* its pending messages in that order and can send the next ones without
+	* waiting.
+	* 
+	* @param long sequence the sequence number of the message, -1 if it was not saved
+	* @return boolean true if the message was saved and must be broadcast
+	* 
+	*/
+	private boolean acknowledgeMessage(long sequence) {
+		if (sequence < 0) {
+			rejectMessage("the message could not be saved.");
+			return false;
+		}
+		try {
+			sendFrame(ACK_PREFIX + sequence);
+		} catch (IOException e) {
+			System.out.println("An error occurred while acknowledging the message of " + username + ".");
+		}
+		return true;
+	}
+	
+	/**
+	*
+	* This method tells the sender that its message was not saved nor
+	* broadcast, and why.
+	* 
+	* @param String reason the reason the message was refused
+	* 
+	*/
+	private void rejectMessage(String reason) {
+		try {
+			sendFrame(NACK_PREFIX + reason);
+		} catch (IOException e) {
+			System.out.println("An error occurred while refusing the message of " + username + ".");
+		}
+	}
+	
+	/**
+	*
+	* Retrieves the text written by the user from a client message, 
+	* without the header added by the client.
+	* 
+	* @param String message the client message
+	* @return String the text of the message
+	* 
+	*/
+	private static String getMessageBody(String message) {
+		int headerEnd = message.indexOf("] : ");
+		return headerEnd < 0 ? message : message.substring(headerEnd + 4);
+	}
+	
+	/**
+	*
+	* Retrieves the name of the user who wrote a client message from its
+	* header. The address and the date are the last two fields of the
+	* header, so the name may itself contain the field separator.
 	* 
-	* @return  ArrayList<String> the list of the 15 most recent messages
+	* @param String message the client message
+	* @return String the name of the sender, empty if the header is malformed
 	* 
 	*/
-	private ArrayList<String> getOldMessages(){
-		return messagesSync.get("message");
+	private static String getMessageSender(String message) {
+		int headerEnd = message.indexOf(" ] : ");
+		int dateStart = headerEnd < 0 ? -1 : message.lastIndexOf(" - ", headerEnd);
+		int addressStart = dateStart < 0 ? -1 : message.lastIndexOf(" - ", dateStart - 1);
+		return !message.startsWith("[ ") || addressStart < 2 ? "" : message.substring(2, addressStart);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,387 @@
+/*********************************************************************
+ *
+ * This file java file contains the class CompressedSegment which
+ * represents a sealed segment of the messages log once it has been
+ * compressed. The lines of the segment are compressed in independent
+ * blocks of about 64 KB, and an index at the end of the file gives the
+ * sequence number of the first message of each block and its position.
+ * Reading a message only inflates the block containing it.
+ *
+ * file: CompressedSegment.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class CompressedSegment {
+
+	private static int MAGIC = 0x4353475A;
+
+	private static int FORMAT_VERSION = 1;
+
+	private static int BLOCK_BYTES = 1 << 16;
+
+	private static int FOOTER_BYTES = 12;
+
+	private Path path;
+
+	private long firstSequence;
+
+	private long lastSequence;
+
+	private long rawBytes;
+
+	private long[] blockSequences;
+
+	private long[] blockOffsets;
+
+	private int[] blockLengths;
+
+	private int[] blockRawLengths;
+
+	/**
+	*
+	* Constructs a new CompressedSegment object from its index.
+	*
+	* @param Path path the path of the compressed segment
+	* @param long firstSequence the sequence number of the first message
+	* @param long lastSequence the sequence number of the last message
+	* @param long rawBytes the size of the segment before compression
+	* @param long[] blockSequences the sequence number of the first message of each block
+	* @param long[] blockOffsets the position of each block in the file
+	* @param int[] blockLengths the compressed size of each block
+	* @param int[] blockRawLengths the size of each block before compression
+	*
+	*/
+	private CompressedSegment(Path path, long firstSequence, long lastSequence, long rawBytes,
+			long[] blockSequences, long[] blockOffsets, int[] blockLengths, int[] blockRawLengths) {
+		this.path = path;
+		this.firstSequence = firstSequence;
+		this.lastSequence = lastSequence;
+		this.rawBytes = rawBytes;
+		this.blockSequences = blockSequences;
+		this.blockOffsets = blockOffsets;
+		this.blockLengths = blockLengths;
+		this.blockRawLengths = blockRawLengths;
+	}
+
+	/**
+	*
+	* This method compresses a sealed segment of the messages log. Blocks
+	* always end on a line, so that each of them can be inflated alone.
+	* The file is laid out as a header, the blocks, their index and a
+	* footer giving the position of the index.
+	*
+	* @param Path plainPath the path of the sealed segment
+	* @param Path compressedPath the path of the compressed segment to write
+	* @param long firstSequence the sequence number of the first message of the segment
+	* @return CompressedSegment the compressed segment
+	* @throws IOException if an I/O error occurs while reading or writing a segment
+	*
+	*/
+	public static CompressedSegment compress(Path plainPath, Path compressedPath, long firstSequence) throws IOException {
+		List<Long> blockSequences = new ArrayList<>();
+		List<Long> blockOffsets = new ArrayList<>();
+		List<Integer> blockLengths = new ArrayList<>();
+		List<Integer> blockRawLengths = new ArrayList<>();
+		long sequence = firstSequence;
+		long rawBytes = 0;
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (InputStream reader = new BufferedInputStream(Files.newInputStream(plainPath), 1 << 16);
+			 FileChannel channel = FileChannel.open(compressedPath,
+					 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			 DataOutputStream writer = new DataOutputStream(
+					 new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+			writer.writeInt(MAGIC);
+			writer.writeInt(FORMAT_VERSION);
+			writer.writeLong(firstSequence);
+			long position = 16;
+			ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_BYTES + 1024);
+			long blockSequence = sequence;
+			int nextByte;
+			while ((nextByte = reader.read()) != -1) {
+				block.write(nextByte);
+				if (nextByte == '\n') {
+					sequence++;
+					if (block.size() >= BLOCK_BYTES) {
+						blockSequences.add(blockSequence);
+						blockOffsets.add(position);
+						blockRawLengths.add(block.size());
+						int length = writeBlock(writer, deflater, block.toByteArray());
+						blockLengths.add(length);
+						position += length;
+						rawBytes += block.size();
+						block.reset();
+						blockSequence = sequence;
+					}
+				}
+			}
+			if (block.size() > 0) {
+				blockSequences.add(blockSequence);
+				blockOffsets.add(position);
+				blockRawLengths.add(block.size());
+				int length = writeBlock(writer, deflater, block.toByteArray());
+				blockLengths.add(length);
+				position += length;
+				rawBytes += block.size();
+			}
+			writer.writeLong(sequence - 1);
+			writer.writeLong(rawBytes);
+			writer.writeInt(blockSequences.size());
+			for (int index = 0; index < blockSequences.size(); index++) {
+				writer.writeLong(blockSequences.get(index));
+				writer.writeLong(blockOffsets.get(index));
+				writer.writeInt(blockLengths.get(index));
+				writer.writeInt(blockRawLengths.get(index));
+			}
+			writer.writeLong(position);
+			writer.writeInt(MAGIC);
+			writer.flush();
+			channel.force(true);
+		} finally {
+			deflater.end();
+		}
+		return open(compressedPath);
+	}
+
+	/**
+	*
+	* This method memory-maps a compressed segment and reads its index.
+	*
+	* @param Path path the path of the compressed segment
+	* @return CompressedSegment the compressed segment
+	* @throws IOException if the segment cannot be read or is corrupted
+	*
+	*/
+	public static CompressedSegment open(Path path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r");
+			 FileChannel channel = file.getChannel()) {
+			long size = channel.size();
+			if (size < 16 + FOOTER_BYTES) {
+				throw new IOException("Truncated compressed segment : " + path);
+			}
+			MappedByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - FOOTER_BYTES, FOOTER_BYTES);
+			long indexOffset = footer.getLong();
+			if (footer.getInt() != MAGIC || indexOffset < 16 || indexOffset > size - FOOTER_BYTES) {
+				throw new IOException("Corrupted compressed segment : " + path);
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 16);
+			if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+				throw new IOException("Unknown compressed segment format : " + path);
+			}
+			long firstSequence = header.getLong();
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - FOOTER_BYTES - indexOffset);
+			long lastSequence = index.getLong();
+			long rawBytes = index.getLong();
+			int blocksCount = index.getInt();
+			long[] blockSequences = new long[blocksCount];
+			long[] blockOffsets = new long[blocksCount];
+			int[] blockLengths = new int[blocksCount];
+			int[] blockRawLengths = new int[blocksCount];
+			for (int block = 0; block < blocksCount; block++) {
+				blockSequences[block] = index.getLong();
+				blockOffsets[block] = index.getLong();
+				blockLengths[block] = index.getInt();
+				blockRawLengths[block] = index.getInt();
+			}
+			return new CompressedSegment(path, firstSequence, lastSequence, rawBytes,
+					blockSequences, blockOffsets, blockLengths, blockRawLengths);
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupted compressed segment : " + path, e);
+		}
+	}
+
+	/**
+	*
+	* This method reads messages of the segment starting at a sequence
+	* number. The index is searched for the block containing the first
+	* message, and blocks are inflated one at a time until enough messages
+	* are read.
+	*
+	* @param long fromSequence the sequence number of the first message to read
+	* @param int count the maximum number of messages to read
+	* @return List<String> the messages read, from oldest to newest
+	* @throws IOException if an I/O error occurs while reading the segment
+	*
+	*/
+	public List<String> read(long fromSequence, int count) throws IOException {
+		List<String> messages = new ArrayList<>();
+		if (fromSequence > lastSequence || blockSequences.length == 0) {
+			return messages;
+		}
+		int block = Arrays.binarySearch(blockSequences, Math.max(fromSequence, firstSequence));
+		if (block < 0) {
+			block = -block - 2;
+		}
+		Inflater inflater = new Inflater();
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r");
+			 FileChannel channel = file.getChannel()) {
+			for (; block < blockSequences.length && messages.size() < count; block++) {
+				byte[] lines = inflateBlock(channel, inflater, block);
+				long sequence = blockSequences[block];
+				int lineStart = 0;
+				for (int position = 0; position < lines.length && messages.size() < count; position++) {
+					if (lines[position] == '\n') {
+						if (sequence >= fromSequence) {
+							messages.add(new String(lines, lineStart, position - lineStart, StandardCharsets.UTF_8));
+						}
+						sequence++;
+						lineStart = position + 1;
+					}
+				}
+			}
+		} finally {
+			inflater.end();
+		}
+		return messages;
+	}
+
+	/**
+	*
+	* This method inflates a whole block of the segment, so that blocks can
+	* be scanned independently, for instance by several threads.
+	*
+	* @param int block the index of the block
+	* @return byte[] the lines of the block, each ending with a new line
+	* @throws IOException if an I/O error occurs or the block is corrupted
+	*
+	*/
+	public byte[] readBlock(int block) throws IOException {
+		Inflater inflater = new Inflater();
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r");
+			 FileChannel channel = file.getChannel()) {
+			return inflateBlock(channel, inflater, block);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the number of blocks of the segment
+	*
+	* @return int the number of blocks
+	*
+	*/
+	public int getBlocksCount() {
+		return blockSequences.length;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the sequence number of the first message of the segment
+	*
+	* @return long firstSequence the sequence number of the first message
+	*
+	*/
+	public long getFirstSequence() {
+		return firstSequence;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the sequence number of the last message of the segment
+	*
+	* @return long lastSequence the sequence number of the last message
+	*
+	*/
+	public long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the size of the segment before compression
+	*
+	* @return long rawBytes the size of the segment before compression
+	*
+	*/
+	public long getRawBytes() {
+		return rawBytes;
+	}
+
+	/**
+	*
+	* This method compresses a block and writes it in the segment.
+	*
+	* @param DataOutputStream writer the compressed segment being written
+	* @param Deflater deflater the compressor, reset before the block
+	* @param byte[] lines the lines of the block
+	* @return int the compressed size of the block
+	* @throws IOException if an I/O error occurs while writing the block
+	*
+	*/
+	private static int writeBlock(DataOutputStream writer, Deflater deflater, byte[] lines) throws IOException {
+		deflater.reset();
+		deflater.setInput(lines);
+		deflater.finish();
+		byte[] buffer = new byte[BLOCK_BYTES];
+		int length = 0;
+		while (!deflater.finished()) {
+			int written = deflater.deflate(buffer);
+			writer.write(buffer, 0, written);
+			length += written;
+		}
+		return length;
+	}
+
+	/**
+	*
+	* This method maps a block of the segment and inflates it.
+	*
+	* @param FileChannel channel the channel of the compressed segment
+	* @param Inflater inflater the decompressor, reset before the block
+	* @param int block the index of the block
+	* @return byte[] the lines of the block
+	* @throws IOException if an I/O error occurs or the block is corrupted
+	*
+	*/
+	private byte[] inflateBlock(FileChannel channel, Inflater inflater, int block) throws IOException {
+		MappedByteBuffer compressed = channel.map(FileChannel.MapMode.READ_ONLY, blockOffsets[block], blockLengths[block]);
+		byte[] lines = new byte[blockRawLengths[block]];
+		inflater.reset();
+		inflater.setInput(compressed);
+		try {
+			int length = 0;
+			while (length < lines.length && !inflater.finished()) {
+				int inflated = inflater.inflate(lines, length, lines.length - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Truncated block in compressed segment : " + path);
+				}
+				length += inflated;
+			}
+			if (length < lines.length) {
+				throw new IOException("Truncated block in compressed segment : " + path);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted block in compressed segment : " + path, e);
+		}
+		return lines;
+	}
+}
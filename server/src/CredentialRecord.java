@@ -0,0 +1,152 @@
+/*********************************************************************
+ *
+ * This file java file contains the class CredentialRecord which
+ * represents the stored credential of a user : a random salt, the
+ * number of iterations of the key derivation and the derived hash of
+ * the user's password. Passwords are never stored in plain text. The
+ * iteration count is kept with every record, so that raising the cost
+ * only upgrades a record the next time its user logs in.
+ *
+ * file: CredentialRecord.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+public final class CredentialRecord {
+
+	public static final int HASH_ITERATIONS = Integer.getInteger("chat.auth.hashIterations", 120000);
+
+	private static int SALT_LENGTH = 16;
+
+	private static int HASH_LENGTH = 32;
+
+	private static String ALGORITHM = "PBKDF2WithHmacSHA256";
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private final byte[] salt;
+
+	private final int iterations;
+
+	private final byte[] hash;
+
+	/**
+	*
+	* Constructs a new CredentialRecord object.
+	*
+	* @param byte[] salt the random salt of the record
+	* @param int iterations the number of iterations of the key derivation
+	* @param byte[] hash the derived hash of the password
+	*
+	*/
+	public CredentialRecord(byte[] salt, int iterations, byte[] hash) {
+		this.salt = salt;
+		this.iterations = iterations;
+		this.hash = hash;
+	}
+
+	/**
+	*
+	* This method creates the record of a password with a new random salt.
+	*
+	* @param String password the password to hash
+	* @param int iterations the number of iterations of the key derivation
+	* @return CredentialRecord the record of the password
+	*
+	*/
+	public static CredentialRecord create(String password, int iterations) {
+		byte[] salt = new byte[SALT_LENGTH];
+		random.nextBytes(salt);
+		return new CredentialRecord(salt, iterations, derive(password, salt, iterations));
+	}
+
+	/**
+	*
+	* This method verifies if a password matches the record. The hashes
+	* are compared in constant time.
+	*
+	* @param String password the password to verify
+	* @return boolean true if the password matches, false otherwise
+	*
+	*/
+	public boolean matches(String password) {
+		return MessageDigest.isEqual(hash, derive(password, salt, iterations));
+	}
+
+	/**
+	*
+	* This method verifies if the record was hashed with less iterations
+	* than the current cost and must be hashed again.
+	*
+	* @return boolean true if the record must be upgraded
+	*
+	*/
+	public boolean isOutdated() {
+		return iterations < HASH_ITERATIONS;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the salt of the record
+	*
+	* @return byte[] salt the random salt
+	*
+	*/
+	public byte[] getSalt() {
+		return salt;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the number of iterations of the record
+	*
+	* @return int iterations the number of iterations
+	*
+	*/
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the hash of the record
+	*
+	* @return byte[] hash the derived hash
+	*
+	*/
+	public byte[] getHash() {
+		return hash;
+	}
+
+	/**
+	*
+	* This method derives the hash of a password with PBKDF2.
+	*
+	* @param String password the password to hash
+	* @param byte[] salt the salt of the record
+	* @param int iterations the number of iterations
+	* @return byte[] the derived hash
+	*
+	*/
+	private static byte[] derive(String password, byte[] salt, int iterations) {
+		PBEKeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_LENGTH * 8);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(keySpec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available.", e);
+		} finally {
+			keySpec.clearPassword();
+		}
+	}
+}
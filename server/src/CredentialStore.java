@@ -0,0 +1,560 @@
+/*********************************************************************
+ *
+ * This file java file contains the class CredentialStore which
+ * represents the server's credentials database. Records are appended
+ * to a compact binary data file and located through an open addressing
+ * hash index kept in a memory-mapped file, so that the credentials do
+ * not have to fit on the heap nor be parsed when the server starts.
+ * The most recently used records are kept in a bounded cache. The
+ * index is rebuilt from the data file when it is missing or behind.
+ * Every write is forced in order : the record, then its index slot,
+ * then the header saying how much of the data file the index covers,
+ * so that after a crash the header never covers a user missing from
+ * the index.
+ *
+ * file: CredentialStore.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CredentialStore {
+
+	private static int INDEX_MAGIC = 0x43494458;
+
+	private static int INITIAL_CAPACITY = 1 << 16;
+
+	private static double MAX_LOAD_FACTOR = 0.7;
+
+	private static int HEADER_SIZE = 32;
+
+	private static int SLOT_SIZE = 12;
+
+	private static int CACHE_LIMIT = 10000;
+
+	private static int MIN_RECORD_LENGTH = 4 + 2 + 1 + 4 + 1;
+
+	private String dataName;
+
+	private String indexName;
+
+	private FileChannel dataChannel;
+
+	private MappedByteBuffer index;
+
+	private int capacity;
+
+	private int size;
+
+	private long indexedLength;
+
+	private Map<String, CredentialRecord> cache = new LinkedHashMap<String, CredentialRecord>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CredentialRecord> eldest) {
+			return size() > CACHE_LIMIT;
+		}
+	};
+
+	/**
+	*
+	* Constructs a new CredentialStore object.
+	*
+	* @param String dataName the name of the credentials data file
+	* @param String indexName the name of the credentials index file
+	*
+	*/
+	public CredentialStore(String dataName, String indexName) {
+		this.dataName = dataName;
+		this.indexName = indexName;
+	}
+
+	/**
+	*
+	* This method opens the data file and maps the index, creating both if
+	* they do not exist. Records appended after the last indexed offset are
+	* indexed again, a record truncated by a crash is dropped and the whole
+	* index is rebuilt if it is unusable. Since the slots of those records
+	* may already be in the index, the users are counted again.
+	*
+	* @throws IOException if an I/O error occurs while opening the store
+	*
+	*/
+	public synchronized void open() throws IOException {
+		dataChannel = FileChannel.open(Paths.get(dataName),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		indexedLength = 0;
+		if (Files.exists(Paths.get(indexName))) {
+			index = mapIndex(Paths.get(indexName), -1);
+			capacity = index.getInt(4);
+			size = index.getInt(8);
+			indexedLength = index.getLong(12);
+			if (index.getInt(0) != INDEX_MAGIC || indexedLength > dataChannel.size()) {
+				System.out.println("Rebuilding credentials index : " + indexName);
+				indexedLength = 0;
+				createIndex(INITIAL_CAPACITY);
+			}
+		} else {
+			createIndex(INITIAL_CAPACITY);
+		}
+		long offset = indexedLength;
+		if (offset < dataChannel.size()) {
+			size = countUsers();
+		}
+		while (offset < dataChannel.size()) {
+			StoredRecord stored;
+			try {
+				stored = readRecord(offset);
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Dropping a truncated credentials record at the end of : " + dataName);
+				dataChannel.truncate(offset);
+				break;
+			}
+			putInIndex(stored.username, offset);
+			offset = stored.nextOffset;
+		}
+		commitIndex(offset);
+	}
+
+	/**
+	*
+	* This method finds the record of a user, first in the cache, then
+	* through the index. A record read through the index is cached under
+	* the lock of the store, so that it cannot overwrite in the cache the
+	* record of a replace made meanwhile.
+	*
+	* @param String username the user name to find
+	* @return CredentialRecord the record of the user, null if the user does not exist
+	* @throws IOException if an I/O error occurs while reading the store
+	*
+	*/
+	public CredentialRecord find(String username) throws IOException {
+		synchronized (cache) {
+			CredentialRecord cached = cache.get(username);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		synchronized (this) {
+			long offset = findOffset(username);
+			if (offset < 0) {
+				return null;
+			}
+			CredentialRecord record = readRecord(offset).record;
+			synchronized (cache) {
+				cache.put(username, record);
+			}
+			return record;
+		}
+	}
+
+	/**
+	*
+	* This method adds the record of a new user. The check and the insertion
+	* are atomic, so that two simultaneous signups of the same user name
+	* cannot both succeed.
+	*
+	* @param String username the user name of the new user
+	* @param CredentialRecord record the record of the new user
+	* @return boolean true if the user was added, false if the user already exists
+	* @throws IOException if an I/O error occurs while writing the store
+	*
+	*/
+	public synchronized boolean register(String username, CredentialRecord record) throws IOException {
+		if (findOffset(username) >= 0) {
+			return false;
+		}
+		long offset = appendRecord(username, record);
+		putInIndex(username, offset);
+		commitIndex(dataChannel.size());
+		synchronized (cache) {
+			cache.put(username, record);
+		}
+		return true;
+	}
+
+	/**
+	*
+	* This method replaces the record of an existing user, for example to
+	* upgrade its hash to the current cost.
+	*
+	* @param String username the user name of the user
+	* @param CredentialRecord record the new record of the user
+	* @throws IOException if an I/O error occurs while writing the store
+	*
+	*/
+	public synchronized void replace(String username, CredentialRecord record) throws IOException {
+		long offset = appendRecord(username, record);
+		putInIndex(username, offset);
+		commitIndex(dataChannel.size());
+		synchronized (cache) {
+			cache.put(username, record);
+		}
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the number of users in the store
+	*
+	* @return int size the number of users
+	*
+	*/
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	*
+	* This method appends a record at the end of the data file and forces
+	* it to the disk, before any slot points to it. A record is made of its
+	* length, the user name, the salt, the iterations and the hash.
+	*
+	* @param String username the user name of the record
+	* @param CredentialRecord record the record to append
+	* @return long the offset of the record
+	* @throws IOException if an I/O error occurs while writing the record
+	*
+	*/
+	private long appendRecord(String username, CredentialRecord record) throws IOException {
+		byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+		int length = 4 + 2 + usernameBytes.length + 1 + record.getSalt().length + 4 + 1 + record.getHash().length;
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(length);
+		buffer.putShort((short) usernameBytes.length);
+		buffer.put(usernameBytes);
+		buffer.put((byte) record.getSalt().length);
+		buffer.put(record.getSalt());
+		buffer.putInt(record.getIterations());
+		buffer.put((byte) record.getHash().length);
+		buffer.put(record.getHash());
+		buffer.flip();
+		long offset = dataChannel.size();
+		while (buffer.hasRemaining()) {
+			dataChannel.write(buffer, offset + buffer.position());
+		}
+		dataChannel.force(false);
+		return offset;
+	}
+
+	/**
+	*
+	* This method forces the slots of the index to the disk, then moves the
+	* header to the length of the data file they cover. The header is only
+	* written once the slots are forced, since the pages of a mapped file
+	* may reach the disk in any order.
+	*
+	* @param long newIndexedLength the length of the data file covered by the slots
+	*
+	*/
+	private void commitIndex(long newIndexedLength) {
+		index.force();
+		indexedLength = newIndexedLength;
+		writeHeader(index, capacity, size, indexedLength);
+	}
+
+	/**
+	*
+	* This method counts the users in the slots of the index.
+	*
+	* @return int the number of users in the index
+	*
+	*/
+	private int countUsers() {
+		int users = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (index.getLong(slotPosition(slot) + 4) != 0) {
+				users++;
+			}
+		}
+		return users;
+	}
+
+	/**
+	*
+	* This method reads the record stored at an offset of the data file. The
+	* length of the record is checked against the size of the data file and
+	* its fields against its length before anything is allocated, so that a
+	* corrupted record is reported instead of exhausting the memory.
+	*
+	* @param long offset the offset of the record
+	* @return StoredRecord the record with its user name and the offset of the next record
+	* @throws IOException if an I/O error occurs while reading the record or if it is corrupted
+	*
+	*/
+	private StoredRecord readRecord(long offset) throws IOException {
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		readFully(lengthBuffer, offset);
+		int length = lengthBuffer.getInt(0);
+		if (length < MIN_RECORD_LENGTH || length > dataChannel.size() - offset) {
+			throw new IOException("Corrupted credentials record length " + length + " at offset " + offset + " in " + dataName);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length - 4);
+		readFully(buffer, offset + 4);
+		buffer.flip();
+		byte[] usernameBytes = new byte[readFieldLength(buffer, buffer.getShort() & 0xFFFF, offset)];
+		buffer.get(usernameBytes);
+		byte[] salt = new byte[readFieldLength(buffer, buffer.get() & 0xFF, offset)];
+		buffer.get(salt);
+		if (buffer.remaining() < 5) {
+			throw new IOException("Corrupted credentials record at offset " + offset + " in " + dataName);
+		}
+		int iterations = buffer.getInt();
+		byte[] hash = new byte[readFieldLength(buffer, buffer.get() & 0xFF, offset)];
+		buffer.get(hash);
+		return new StoredRecord(
+				new String(usernameBytes, StandardCharsets.UTF_8),
+				new CredentialRecord(salt, iterations, hash),
+				offset + length);
+	}
+
+	/**
+	*
+	* This method checks that a field of a record fits in what is left of
+	* the record.
+	*
+	* @param ByteBuffer buffer the record, positioned on the field
+	* @param int fieldLength the length of the field read from the record
+	* @param long offset the offset of the record
+	* @return int the length of the field
+	* @throws IOException if the field is longer than what is left of the record
+	*
+	*/
+	private int readFieldLength(ByteBuffer buffer, int fieldLength, long offset) throws IOException {
+		if (fieldLength > buffer.remaining()) {
+			throw new IOException("Corrupted credentials record at offset " + offset + " in " + dataName);
+		}
+		return fieldLength;
+	}
+
+	/**
+	*
+	* This method fills a buffer from an offset of the data file.
+	*
+	* @param ByteBuffer buffer the buffer to fill
+	* @param long offset the offset to read from
+	* @throws IOException if an I/O error occurs or the data file is truncated
+	*
+	*/
+	private void readFully(ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (dataChannel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("Truncated credentials record at offset " + offset + " in " + dataName);
+			}
+		}
+	}
+
+	/**
+	*
+	* This method finds the offset of the most recent record of a user
+	* by probing the index from the slot of the user name's hash.
+	*
+	* @param String username the user name to find
+	* @return long the offset of the record, -1 if the user does not exist
+	* @throws IOException if an I/O error occurs while reading a record
+	*
+	*/
+	private long findOffset(String username) throws IOException {
+		int hash = username.hashCode();
+		for (int slot = firstSlot(hash, capacity); ; slot = (slot + 1) % capacity) {
+			long storedOffset = index.getLong(slotPosition(slot) + 4);
+			if (storedOffset == 0) {
+				return -1;
+			}
+			if (index.getInt(slotPosition(slot)) == hash && readRecord(storedOffset - 1).username.equals(username)) {
+				return storedOffset - 1;
+			}
+		}
+	}
+
+	/**
+	*
+	* This method points the index slot of a user to a record, adding the
+	* user to the index if the user is not in it. The index is doubled when
+	* its load factor is exceeded. The header is left to commitIndex.
+	*
+	* @param String username the user name of the record
+	* @param long offset the offset of the record
+	* @throws IOException if an I/O error occurs while updating the index
+	*
+	*/
+	private void putInIndex(String username, long offset) throws IOException {
+		int hash = username.hashCode();
+		int slot = firstSlot(hash, capacity);
+		while (true) {
+			long storedOffset = index.getLong(slotPosition(slot) + 4);
+			if (storedOffset == 0) {
+				break;
+			}
+			if (index.getInt(slotPosition(slot)) == hash && readRecord(storedOffset - 1).username.equals(username)) {
+				index.putLong(slotPosition(slot) + 4, offset + 1);
+				return;
+			}
+			slot = (slot + 1) % capacity;
+		}
+		index.putInt(slotPosition(slot), hash);
+		index.putLong(slotPosition(slot) + 4, offset + 1);
+		size++;
+		if (size > capacity * MAX_LOAD_FACTOR) {
+			growIndex();
+		}
+	}
+
+	/**
+	*
+	* This method doubles the capacity of the index. The slots are moved
+	* with their stored hash, without reading the records.
+	*
+	* @throws IOException if an I/O error occurs while writing the new index
+	*
+	*/
+	private void growIndex() throws IOException {
+		int newCapacity = capacity * 2;
+		Path temporaryPath = Paths.get(indexName + ".tmp");
+		Files.deleteIfExists(temporaryPath);
+		MappedByteBuffer newIndex = mapIndex(temporaryPath, newCapacity);
+		for (int slot = 0; slot < capacity; slot++) {
+			long storedOffset = index.getLong(slotPosition(slot) + 4);
+			if (storedOffset != 0) {
+				int hash = index.getInt(slotPosition(slot));
+				int newSlot = firstSlot(hash, newCapacity);
+				while (newIndex.getLong(slotPosition(newSlot) + 4) != 0) {
+					newSlot = (newSlot + 1) % newCapacity;
+				}
+				newIndex.putInt(slotPosition(newSlot), hash);
+				newIndex.putLong(slotPosition(newSlot) + 4, storedOffset);
+			}
+		}
+		writeHeader(newIndex, newCapacity, size, indexedLength);
+		newIndex.force();
+		Files.move(temporaryPath, Paths.get(indexName),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		index = newIndex;
+		capacity = newCapacity;
+	}
+
+	/**
+	*
+	* This method replaces the index by an empty one.
+	*
+	* @param int newCapacity the number of slots of the index
+	* @throws IOException if an I/O error occurs while writing the index
+	*
+	*/
+	private void createIndex(int newCapacity) throws IOException {
+		Files.deleteIfExists(Paths.get(indexName));
+		index = mapIndex(Paths.get(indexName), newCapacity);
+		capacity = newCapacity;
+		size = 0;
+		writeHeader(index, capacity, size, 0);
+	}
+
+	/**
+	*
+	* This method maps an index file in memory. The header of an index is
+	* made of its magic number, its capacity, its size and the length of
+	* the data file it covers, followed by slots made of a hash and the
+	* offset of a record plus one, zero marking an empty slot.
+	*
+	* @param Path path the path of the index file
+	* @param int newCapacity the number of slots of a new index, -1 to map an existing one
+	* @return MappedByteBuffer the mapped index
+	* @throws IOException if an I/O error occurs while mapping the index
+	*
+	*/
+	private static MappedByteBuffer mapIndex(Path path, int newCapacity) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long length = newCapacity < 0 ? channel.size() : HEADER_SIZE + (long) newCapacity * SLOT_SIZE;
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+		}
+	}
+
+	/**
+	*
+	* This method writes the header of an index.
+	*
+	* @param MappedByteBuffer target the mapped index
+	* @param int targetCapacity the number of slots of the index
+	* @param int targetSize the number of users in the index
+	* @param long indexedLength the length of the data file covered by the index
+	*
+	*/
+	private static void writeHeader(MappedByteBuffer target, int targetCapacity, int targetSize, long indexedLength) {
+		target.putInt(0, INDEX_MAGIC);
+		target.putInt(4, targetCapacity);
+		target.putInt(8, targetSize);
+		target.putLong(12, indexedLength);
+	}
+
+	/**
+	*
+	* This method computes the first slot probed for a hash.
+	*
+	* @param int hash the hash of the user name
+	* @param int slots the number of slots of the index
+	* @return int the first slot to probe
+	*
+	*/
+	private static int firstSlot(int hash, int slots) {
+		int spread = hash ^ (hash >>> 16);
+		return (spread & 0x7FFFFFFF) % slots;
+	}
+
+	/**
+	*
+	* This method computes the position of a slot in the index.
+	*
+	* @param int slot the slot
+	* @return int the position of the slot
+	*
+	*/
+	private static int slotPosition(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	/**
+	*
+	*	This class contains a record read from the data file with its
+	*	user name and the offset of the record following it.
+	*
+	*/
+	private static class StoredRecord {
+
+		private final String username;
+
+		private final CredentialRecord record;
+
+		private final long nextOffset;
+
+		/**
+		*
+		* Constructs a new StoredRecord object.
+		*
+		* @param String username the user name of the record
+		* @param CredentialRecord record the record
+		* @param long nextOffset the offset of the next record
+		*
+		*/
+		public StoredRecord(String username, CredentialRecord record, long nextOffset) {
+			this.username = username;
+			this.record = record;
+			this.nextOffset = nextOffset;
+		}
+	}
+}
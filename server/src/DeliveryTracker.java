@@ -0,0 +1,145 @@
+/*********************************************************************
+ *
+ * This file java file contains the class DeliveryTracker which
+ * measures how long the messages take to be saved in the messages
+ * log and to be read by the users. Users acknowledge what they read
+ * with the sequence number of the newest message they received, so
+ * only one read mark is kept per user instead of a state per message.
+ * The time each recent message was saved at is kept in a ring, to
+ * measure its delivery when a user acknowledges it.
+ *
+ * file: DeliveryTracker.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DeliveryTracker {
+
+	private static int SAVED_TIMES_LIMIT = 4096;
+
+	private long[] savedSequences = new long[SAVED_TIMES_LIMIT];
+
+	private long[] savedNanos = new long[SAVED_TIMES_LIMIT];
+
+	private ConcurrentHashMap<String, Long> readMarks = new ConcurrentHashMap<>();
+
+	private LongAdder persists = new LongAdder();
+
+	private LongAdder persistNanos = new LongAdder();
+
+	private LongAccumulator persistMaxNanos = new LongAccumulator(Math::max, 0);
+
+	private LongAdder failedPersists = new LongAdder();
+
+	private LongAdder deliveries = new LongAdder();
+
+	private LongAdder deliveryNanos = new LongAdder();
+
+	private LongAccumulator deliveryMaxNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	*
+	* This method records that a message was saved in the messages log.
+	*
+	* @param long sequence the sequence number of the message
+	* @param long receivedNanos the time the message was received from its sender
+	*
+	*/
+	public void recordPersist(long sequence, long receivedNanos) {
+		long nanos = System.nanoTime();
+		synchronized (savedSequences) {
+			int slot = (int) (sequence % SAVED_TIMES_LIMIT);
+			savedSequences[slot] = sequence;
+			savedNanos[slot] = nanos;
+		}
+		persists.increment();
+		persistNanos.add(nanos - receivedNanos);
+		persistMaxNanos.accumulate(nanos - receivedNanos);
+	}
+
+	/**
+	*
+	* This method records that a message could not be saved in the messages log.
+	*
+	*/
+	public void recordFailedPersist() {
+		failedPersists.increment();
+	}
+
+	/**
+	*
+	* This method moves the read mark of a user to the newest message the
+	* user received. A mark never moves back. When it moves, the delivery of
+	* the message acknowledged is measured if it was saved recently.
+	*
+	* @param String username the user name of the user
+	* @param long sequence the sequence number of the newest message received
+	*
+	*/
+	public void acknowledgeRead(String username, long sequence) {
+		if (sequence <= getReadMark(username) || readMarks.merge(username, sequence, Math::max) != sequence) {
+			return;
+		}
+		long nanos = System.nanoTime();
+		synchronized (savedSequences) {
+			int slot = (int) (sequence % SAVED_TIMES_LIMIT);
+			if (savedSequences[slot] != sequence) {
+				return;
+			}
+			nanos -= savedNanos[slot];
+		}
+		deliveries.increment();
+		deliveryNanos.add(nanos);
+		deliveryMaxNanos.accumulate(nanos);
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the read mark of a user
+	*
+	* @param String username the user name of the user
+	* @return long the sequence number of the newest message read by the user, 0 if none
+	*
+	*/
+	public long getReadMark(String username) {
+		return readMarks.getOrDefault(username, 0L);
+	}
+
+	/**
+	*
+	* This method describes the persist and delivery latencies measured.
+	*
+	* @return String the description of the statistics
+	*
+	*/
+	public String describeStatistics() {
+		return persists.sum() + " messages saved in " + averageMicros(persistNanos, persists) + " us on average ("
+				+ TimeUnit.NANOSECONDS.toMicros(persistMaxNanos.get()) + " us at most), "
+				+ failedPersists.sum() + " could not be saved. "
+				+ deliveries.sum() + " read acknowledgements measured " + averageMicros(deliveryNanos, deliveries) / 1000
+				+ " ms on average from saving to reading (" + TimeUnit.NANOSECONDS.toMillis(deliveryMaxNanos.get())
+				+ " ms at most), " + readMarks.size() + " users have a read mark.";
+	}
+
+	/**
+	*
+	* This method computes the average of durations in microseconds.
+	*
+	* @param LongAdder nanos the total of the durations in nanoseconds
+	* @param LongAdder count the number of durations
+	* @return long the average duration in microseconds, 0 if there is none
+	*
+	*/
+	private static long averageMicros(LongAdder nanos, LongAdder count) {
+		long total = count.sum();
+		return total == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos.sum() / total);
+	}
+}
@@ -0,0 +1,936 @@
+/*********************************************************************
+ *
+ * This file java file contains the class HistoryAnalytics which is an
+ * offline tool reading the messages log of a server : its active
+ * segment, its sealed segments and its compressed segments. Files are
+ * memory-mapped and split in chunks of whole lines, which are parsed
+ * in parallel on a fork-join pool without decoding the lines into
+ * strings. It reports the messages per user and per hour and the
+ * busiest times, or exports the messages matching filters in CSV or
+ * JSON lines. It only reads the files, so it can run beside a live
+ * server : the last line of an active segment still being written is
+ * skipped.
+ *
+ * file: HistoryAnalytics.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+public class HistoryAnalytics {
+
+	private static long CHUNK_BYTES = 32L << 20;
+
+	private static int CHUNK_BLOCKS = 256;
+
+	private static int LINE_OVERHANG_BYTES = 1 << 20;
+
+	private static int DATE_LENGTH = "yyyy-MM-dd@HH:mm:ss".length();
+
+	private static int TOP_LIMIT = 10;
+
+	private static int[] HOUR_DIGITS = {0, 1, 2, 3, 5, 6, 8, 9, 11, 12};
+
+	private static byte[] DATE_PATTERN = "0000-00-00@00:00:00".getBytes(StandardCharsets.ISO_8859_1);
+
+	private static byte[] HEADER_END = " ] : ".getBytes(StandardCharsets.ISO_8859_1);
+
+	private static byte[] FIELD_SEPARATOR = " - ".getBytes(StandardCharsets.ISO_8859_1);
+
+	private List<Chunk> chunks = new ArrayList<>();
+
+	private long inputBytes = 0;
+
+	private int inputFiles = 0;
+
+	private String user;
+
+	private byte[] userBytes;
+
+	private byte[] fromDate;
+
+	private byte[] toDate;
+
+	private byte[] keyword;
+
+	/**
+	*
+	* This class represents a part of a file of the log, made of whole
+	* lines : a range of bytes of a plain segment or a range of blocks of a
+	* compressed segment.
+	*
+	*/
+	private static class Chunk {
+
+		private final Path path;
+
+		private final CompressedSegment compressedSegment;
+
+		private final long start;
+
+		private final long end;
+
+		/**
+		*
+		* Constructs a new Chunk object.
+		*
+		* @param Path path the path of the file
+		* @param CompressedSegment compressedSegment the compressed segment, null for a plain file
+		* @param long start the first byte, or block, of the chunk
+		* @param long end the end of the chunk, excluded
+		*
+		*/
+		private Chunk(Path path, CompressedSegment compressedSegment, long start, long end) {
+			this.path = path;
+			this.compressedSegment = compressedSegment;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	*
+	* This interface represents what is done with each message of a chunk.
+	*
+	*/
+	private interface MessageVisitor {
+
+		/**
+		*
+		* This method visits a message. The message is given by positions in
+		* the buffer of its line, to avoid decoding it.
+		*
+		* @param ByteBuffer lines the buffer containing the line of the message
+		* @param int userStart the position of the user name
+		* @param int addressStart the position of the address, which ends the user name with a separator
+		* @param int dateStart the position of the date, which ends the address with a separator
+		* @param int textStart the position of the text, right after the header
+		* @param int lineEnd the position of the end of the line
+		*
+		*/
+		void visit(ByteBuffer lines, int userStart, int addressStart, int dateStart, int textStart, int lineEnd);
+
+		/**
+		*
+		* This method counts a line which is not a message.
+		*
+		*/
+		void skip();
+	}
+
+	/**
+	*
+	* This class represents the statistics of the messages of some chunks.
+	* User names are kept in ISO-8859-1 strings of their UTF-8 bytes, which
+	* are cheap to build, and decoded once the report is written.
+	*
+	*/
+	private static class Statistics implements MessageVisitor {
+
+		private long messages = 0;
+
+		private long malformedLines = 0;
+
+		private long textBytes = 0;
+
+		private long unreadChunks = 0;
+
+		private HashMap<String, HashMap<Integer, long[]>> userHourMessages = new HashMap<>();
+
+		@Override
+		public void visit(ByteBuffer lines, int userStart, int addressStart, int dateStart, int textStart, int lineEnd) {
+			String username = decodeLatin1(lines, userStart, addressStart - FIELD_SEPARATOR.length);
+			int hour = parseHour(lines, dateStart);
+			messages++;
+			textBytes += lineEnd - textStart;
+			userHourMessages.computeIfAbsent(username, key -> new HashMap<>()).computeIfAbsent(hour, key -> new long[1])[0]++;
+		}
+
+		@Override
+		public void skip() {
+			malformedLines++;
+		}
+
+		/**
+		*
+		* This method adds the statistics of other chunks to these ones.
+		*
+		* @param Statistics other the statistics of the other chunks
+		* @return Statistics these statistics
+		*
+		*/
+		private Statistics merge(Statistics other) {
+			messages += other.messages;
+			malformedLines += other.malformedLines;
+			textBytes += other.textBytes;
+			unreadChunks += other.unreadChunks;
+			other.userHourMessages.forEach((username, hours) -> {
+				HashMap<Integer, long[]> mergedHours = userHourMessages.computeIfAbsent(username, k -> new HashMap<>());
+				hours.forEach((key, count) -> mergedHours.computeIfAbsent(key, k -> new long[1])[0] += count[0]);
+			});
+			return this;
+		}
+
+		/**
+		*
+		* This method totals the messages of each user.
+		*
+		* @return HashMap<String, long[]> the number of messages of each user
+		*
+		*/
+		private HashMap<String, long[]> countUserMessages() {
+			HashMap<String, long[]> userMessages = new HashMap<>();
+			userHourMessages.forEach((username, hours) ->
+					hours.forEach((hour, count) -> userMessages.computeIfAbsent(username, k -> new long[1])[0] += count[0]));
+			return userMessages;
+		}
+
+		/**
+		*
+		* This method totals the messages of each hour.
+		*
+		* @return HashMap<Integer, long[]> the number of messages of each hour
+		*
+		*/
+		private HashMap<Integer, long[]> countHourMessages() {
+			HashMap<Integer, long[]> hourMessages = new HashMap<>();
+			userHourMessages.forEach((username, hours) ->
+					hours.forEach((hour, count) -> hourMessages.computeIfAbsent(hour, k -> new long[1])[0] += count[0]));
+			return hourMessages;
+		}
+	}
+
+	/**
+	*
+	* This class represents the task computing the statistics of a range of
+	* chunks. It splits the range in two until a single chunk is left.
+	*
+	*/
+	private class StatisticsTask extends RecursiveTask<Statistics> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int firstChunk;
+
+		private final int endChunk;
+
+		/**
+		*
+		* Constructs a new StatisticsTask object.
+		*
+		* @param int firstChunk the index of the first chunk
+		* @param int endChunk the index after the last chunk
+		*
+		*/
+		private StatisticsTask(int firstChunk, int endChunk) {
+			this.firstChunk = firstChunk;
+			this.endChunk = endChunk;
+		}
+
+		@Override
+		protected Statistics compute() {
+			if (endChunk - firstChunk == 1) {
+				Statistics statistics = new Statistics();
+				if (!scan(chunks.get(firstChunk), statistics)) {
+					statistics.unreadChunks++;
+				}
+				return statistics;
+			}
+			int middleChunk = (firstChunk + endChunk) >>> 1;
+			StatisticsTask secondHalf = new StatisticsTask(middleChunk, endChunk);
+			secondHalf.fork();
+			return new StatisticsTask(firstChunk, middleChunk).compute().merge(secondHalf.join());
+		}
+	}
+
+	/**
+	*
+	* This class represents the export of the messages of a chunk which
+	* match the filters, encoded in CSV or in JSON lines.
+	*
+	*/
+	private class Export implements MessageVisitor {
+
+		private final boolean isJson;
+
+		private ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 16);
+
+		private long messages = 0;
+
+		private boolean isUnread = false;
+
+		/**
+		*
+		* Constructs a new Export object.
+		*
+		* @param boolean isJson true to export in JSON lines, false in CSV
+		*
+		*/
+		private Export(boolean isJson) {
+			this.isJson = isJson;
+		}
+
+		@Override
+		public void visit(ByteBuffer lines, int userStart, int addressStart, int dateStart, int textStart, int lineEnd) {
+			int userEnd = addressStart - FIELD_SEPARATOR.length;
+			int addressEnd = dateStart - FIELD_SEPARATOR.length;
+			if ((userBytes != null && !equalsAt(lines, userStart, userEnd, userBytes))
+					|| (fromDate != null && compareAt(lines, dateStart, fromDate) < 0)
+					|| (toDate != null && compareAt(lines, dateStart, toDate) >= 0)
+					|| (keyword != null && indexOf(lines, keyword, textStart, lineEnd) < 0)) {
+				return;
+			}
+			messages++;
+			if (isJson) {
+				writeAscii("{\"user\":");
+				writeJsonString(lines, userStart, userEnd);
+				writeAscii(",\"address\":");
+				writeJsonString(lines, addressStart, addressEnd);
+				writeAscii(",\"time\":");
+				writeJsonString(lines, dateStart, dateStart + DATE_LENGTH);
+				writeAscii(",\"text\":");
+				writeJsonString(lines, textStart, lineEnd);
+				writeAscii("}\n");
+			} else {
+				writeCsvField(lines, userStart, userEnd);
+				output.write(',');
+				writeCsvField(lines, addressStart, addressEnd);
+				output.write(',');
+				writeCsvField(lines, dateStart, dateStart + DATE_LENGTH);
+				output.write(',');
+				writeCsvField(lines, textStart, lineEnd);
+				output.write('\n');
+			}
+		}
+
+		@Override
+		public void skip() {
+		}
+
+		/**
+		*
+		* This method writes ASCII characters in the export.
+		*
+		* @param String text the characters
+		*
+		*/
+		private void writeAscii(String text) {
+			for (int index = 0; index < text.length(); index++) {
+				output.write(text.charAt(index));
+			}
+		}
+
+		/**
+		*
+		* This method writes a field in CSV, quoted if it contains a comma, a
+		* quote or a carriage return, with its quotes doubled.
+		*
+		* @param ByteBuffer lines the buffer containing the field
+		* @param int start the position of the field
+		* @param int end the position of the end of the field
+		*
+		*/
+		private void writeCsvField(ByteBuffer lines, int start, int end) {
+			boolean isQuoted = false;
+			for (int position = start; position < end && !isQuoted; position++) {
+				byte character = lines.get(position);
+				isQuoted = character == ',' || character == '"' || character == '\r';
+			}
+			if (isQuoted) {
+				output.write('"');
+			}
+			for (int position = start; position < end; position++) {
+				byte character = lines.get(position);
+				if (character == '"') {
+					output.write('"');
+				}
+				output.write(character);
+			}
+			if (isQuoted) {
+				output.write('"');
+			}
+		}
+
+		/**
+		*
+		* This method writes a field as a JSON string. UTF-8 bytes are copied
+		* as they are, and only quotes, backslashes and control characters
+		* are escaped.
+		*
+		* @param ByteBuffer lines the buffer containing the field
+		* @param int start the position of the field
+		* @param int end the position of the end of the field
+		*
+		*/
+		private void writeJsonString(ByteBuffer lines, int start, int end) {
+			output.write('"');
+			for (int position = start; position < end; position++) {
+				byte character = lines.get(position);
+				if (character == '"' || character == '\\') {
+					output.write('\\');
+					output.write(character);
+				} else if (character >= 0 && character < 0x20) {
+					writeAscii(String.format("\\u%04x", character));
+				} else {
+					output.write(character);
+				}
+			}
+			output.write('"');
+		}
+	}
+
+	/**
+	*
+	* The main method to run the analytics.
+	*
+	* @param args the command and its arguments
+	* @throws Exception if an error occurs while reading the log or writing the results
+	*
+	*/
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2 || !(args[0].equals("report") || args[0].equals("export"))) {
+			System.out.println("Usage : java HistoryAnalytics report [--csv <per user and hour file>] <log files or directories>");
+			System.out.println("        java HistoryAnalytics export csv|jsonl <output file> [--user <username>]"
+					+ " [--from <yyyy-MM-dd@HH:mm:ss>] [--to <yyyy-MM-dd@HH:mm:ss>] [--contains <keyword>] <log files or directories>");
+			System.exit(1);
+		}
+		HistoryAnalytics analytics = new HistoryAnalytics();
+		int argument = args[0].equals("report") ? 1 : 3;
+		String csvName = null;
+		for (; argument + 1 < args.length && args[argument].startsWith("--"); argument += 2) {
+			String value = args[argument + 1];
+			switch (args[argument]) {
+				case "--csv":
+					csvName = value;
+					break;
+				case "--user":
+					analytics.user = value;
+					analytics.userBytes = value.getBytes(StandardCharsets.UTF_8);
+					break;
+				case "--from":
+					analytics.fromDate = value.getBytes(StandardCharsets.ISO_8859_1);
+					break;
+				case "--to":
+					analytics.toDate = value.getBytes(StandardCharsets.ISO_8859_1);
+					break;
+				case "--contains":
+					analytics.keyword = value.getBytes(StandardCharsets.UTF_8);
+					break;
+				default:
+					System.out.println("Unknown option : " + args[argument]);
+					System.exit(1);
+			}
+		}
+		for (; argument < args.length; argument++) {
+			analytics.addInput(Paths.get(args[argument]));
+		}
+		if (analytics.chunks.isEmpty()) {
+			System.out.println("No messages log file was found.");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		if (args[0].equals("report")) {
+			analytics.report(csvName);
+		} else {
+			analytics.export(args[1].equals("jsonl"), args[2]);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.format("Scanned %d files, %d MB of messages in %.2f s : %.0f MB/s on %d threads.%n", analytics.inputFiles,
+				analytics.inputBytes >> 20, seconds, (analytics.inputBytes >> 20) / seconds, ForkJoinPool.commonPool().getParallelism());
+	}
+
+	/**
+	*
+	* This method adds a file of the log, or the files of the log in a
+	* directory, to the input of the analytics. A sealed segment which was
+	* also compressed is only read once, from its compressed segment.
+	*
+	* @param Path path the path of the file or of the directory
+	* @throws IOException if an I/O error occurs while listing or opening the files
+	*
+	*/
+	private void addInput(Path path) throws IOException {
+		if (!Files.isDirectory(path)) {
+			addFile(path);
+			return;
+		}
+		List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "messages_*.{txt,seg,segz}")) {
+			files.forEach(paths::add);
+		}
+		paths.sort(Comparator.comparing(HistoryAnalytics::logName).thenComparingLong(HistoryAnalytics::firstSequence));
+		for (Path file: paths) {
+			if (!(file.toString().endsWith(".seg") && Files.exists(Paths.get(file + "z")))) {
+				addFile(file);
+			}
+		}
+	}
+
+	/**
+	*
+	* This method gets the name of the messages log a file belongs to : the
+	* name of its active segment without its extension.
+	*
+	* @param Path path the path of the file
+	* @return String the name of the messages log
+	*
+	*/
+	private static String logName(Path path) {
+		String fileName = path.getFileName().toString();
+		return fileName.endsWith(".txt") ? fileName.substring(0, fileName.length() - 4) : fileName.substring(0, fileName.lastIndexOf('_'));
+	}
+
+	/**
+	*
+	* This method gets the sequence number of the first message of a file,
+	* read from the name of a segment, so that the files of a messages log
+	* are read in order. The active segment comes after the others.
+	*
+	* @param Path path the path of the file
+	* @return long the sequence number of the first message of the file
+	*
+	*/
+	private static long firstSequence(Path path) {
+		String fileName = path.getFileName().toString();
+		if (fileName.endsWith(".txt")) {
+			return Long.MAX_VALUE;
+		}
+		try {
+			return Long.parseLong(fileName.substring(fileName.lastIndexOf('_') + 1, fileName.indexOf('-', fileName.lastIndexOf('_'))));
+		} catch (RuntimeException e) {
+			return Long.MAX_VALUE - 1;
+		}
+	}
+
+	/**
+	*
+	* This method splits a file of the log in chunks. A plain file is split
+	* in ranges of bytes and a compressed segment in ranges of blocks.
+	*
+	* @param Path path the path of the file
+	* @throws IOException if an I/O error occurs while opening the file
+	*
+	*/
+	private void addFile(Path path) throws IOException {
+		inputFiles++;
+		if (path.toString().endsWith(".segz")) {
+			CompressedSegment compressedSegment = CompressedSegment.open(path);
+			inputBytes += compressedSegment.getRawBytes();
+			for (int block = 0; block < compressedSegment.getBlocksCount(); block += CHUNK_BLOCKS) {
+				chunks.add(new Chunk(path, compressedSegment, block, Math.min(compressedSegment.getBlocksCount(), block + CHUNK_BLOCKS)));
+			}
+			return;
+		}
+		long size = Files.size(path);
+		inputBytes += size;
+		for (long start = 0; start < size; start += CHUNK_BYTES) {
+			chunks.add(new Chunk(path, null, start, Math.min(size, start + CHUNK_BYTES)));
+		}
+	}
+
+	/**
+	*
+	* This method computes the statistics of all chunks in parallel and
+	* prints the report, and writes the messages per user and per hour in
+	* a CSV file if one is given.
+	*
+	* @param String csvName the name of the CSV file, null if none
+	* @throws IOException if an I/O error occurs while writing the CSV file
+	*
+	*/
+	private void report(String csvName) throws IOException {
+		Statistics statistics = ForkJoinPool.commonPool().invoke(new StatisticsTask(0, chunks.size()));
+		HashMap<String, long[]> userMessages = statistics.countUserMessages();
+		HashMap<Integer, long[]> hourMessages = statistics.countHourMessages();
+		System.out.println(statistics.messages + " messages by " + userMessages.size() + " users over "
+				+ hourMessages.size() + " hours, " + (statistics.textBytes >> 10) + " KB of text, "
+				+ statistics.malformedLines + " lines which are not messages.");
+		System.out.println("\nMost active users :");
+		top(userMessages).forEach(entry ->
+				System.out.println("  " + decodeUtf8(entry.getKey()) + " : " + entry.getValue()[0] + " messages"));
+		System.out.println("\nBusiest hours :");
+		top(hourMessages).forEach(entry ->
+				System.out.println("  " + formatHour(entry.getKey()) + " : " + entry.getValue()[0] + " messages"));
+		long[] hoursOfDay = new long[24];
+		hourMessages.forEach((hour, count) -> hoursOfDay[hour % 100] += count[0]);
+		System.out.println("\nMessages per hour of the day :");
+		for (int hour = 0; hour < 24; hour++) {
+			System.out.format("  %02d h : %d%n", hour, hoursOfDay[hour]);
+		}
+		printUnreadChunks(statistics.unreadChunks);
+		if (csvName != null) {
+			try (OutputStream csv = new BufferedOutputStream(Files.newOutputStream(Paths.get(csvName)), 1 << 16)) {
+				csv.write("user,hour,messages\n".getBytes(StandardCharsets.UTF_8));
+				for (Map.Entry<String, HashMap<Integer, long[]>> user: statistics.userHourMessages.entrySet()) {
+					String username = decodeUtf8(user.getKey());
+					String field = username.contains(",") || username.contains("\"")
+							? "\"" + username.replace("\"", "\"\"") + "\"" : username;
+					for (Map.Entry<Integer, long[]> hour: user.getValue().entrySet()) {
+						csv.write((field + "," + formatHour(hour.getKey()) + "," + hour.getValue()[0] + "\n").getBytes(StandardCharsets.UTF_8));
+					}
+				}
+			}
+			System.out.println("\nMessages per user and per hour written in : " + csvName);
+		}
+	}
+
+	/**
+	*
+	* This method exports the messages matching the filters. The chunks are
+	* encoded in parallel, a few ahead of the one being written, and are
+	* written in the order of the log.
+	*
+	* @param boolean isJson true to export in JSON lines, false in CSV
+	* @param String outputName the name of the export file
+	* @throws IOException if an I/O error occurs while writing the export
+	*
+	*/
+	private void export(boolean isJson, String outputName) throws IOException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int window = 2 * pool.getParallelism() + 1;
+		ArrayDeque<ForkJoinTask<Export>> pendingExports = new ArrayDeque<>();
+		long messages = 0;
+		int unreadChunks = 0;
+		try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(Paths.get(outputName)), 1 << 16)) {
+			if (!isJson) {
+				output.write("user,address,time,text\n".getBytes(StandardCharsets.UTF_8));
+			}
+			for (int chunk = 0; chunk < chunks.size() || !pendingExports.isEmpty(); ) {
+				while (chunk < chunks.size() && pendingExports.size() < window) {
+					Chunk nextChunk = chunks.get(chunk++);
+					pendingExports.add(pool.submit(() -> {
+						Export export = new Export(isJson);
+						export.isUnread = !scan(nextChunk, export);
+						return export;
+					}));
+				}
+				Export export = pendingExports.poll().join();
+				export.output.writeTo(output);
+				messages += export.messages;
+				unreadChunks += export.isUnread ? 1 : 0;
+			}
+		}
+		System.out.println(messages + " messages" + (user != null ? " of " + user : "") + " exported in : " + outputName);
+		printUnreadChunks(unreadChunks);
+	}
+
+	/**
+	*
+	* This method scans the messages of a chunk. A plain chunk is mapped
+	* with the byte before it, to know if it starts on a line, and enough
+	* bytes after it to finish its last line. The lines starting in the
+	* chunk are its own. Since the server may compress or delete a segment
+	* during the scan, a chunk whose file cannot be read is skipped from
+	* there instead of ending the scan.
+	*
+	* @param Chunk chunk the chunk
+	* @param MessageVisitor visitor what is done with each message
+	* @return boolean true if the whole chunk was read, false if its file could not be read
+	*
+	*/
+	private static boolean scan(Chunk chunk, MessageVisitor visitor) {
+		try {
+			if (chunk.compressedSegment != null) {
+				for (long block = chunk.start; block < chunk.end; block++) {
+					byte[] lines = chunk.compressedSegment.readBlock((int) block);
+					scanLines(ByteBuffer.wrap(lines), 0, lines.length, visitor);
+				}
+				return true;
+			}
+			try (FileChannel channel = FileChannel.open(chunk.path, StandardOpenOption.READ)) {
+				long mapStart = Math.max(0, chunk.start - 1);
+				long mapEnd = Math.min(channel.size(), chunk.end + LINE_OVERHANG_BYTES);
+				ByteBuffer lines = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+				int position = (int) (chunk.start - mapStart);
+				if (position > 0) {
+					while (position < lines.limit() && lines.get(position - 1) != '\n') {
+						position++;
+					}
+				}
+				scanLines(lines, position, (int) (chunk.end - mapStart), visitor);
+			}
+			return true;
+		} catch (IOException e) {
+			System.out.println("The messages log file cannot be read, it was maybe compressed or deleted during the scan : "
+					+ chunk.path + " (" + e + "). The rest of this part of the file is skipped.");
+			return false;
+		}
+	}
+
+	/**
+	*
+	* This method tells how many chunks could not be read, if any.
+	*
+	* @param long unreadChunks the number of chunks which could not be read
+	*
+	*/
+	private static void printUnreadChunks(long unreadChunks) {
+		if (unreadChunks > 0) {
+			System.out.println("\nThe results are incomplete : " + unreadChunks
+					+ " parts of the log could not be read during the scan.");
+		}
+	}
+
+	/**
+	*
+	* This method scans the lines starting between two positions of a
+	* buffer. A line which does not end with a new line is being written by
+	* the server and is skipped.
+	*
+	* @param ByteBuffer lines the buffer containing the lines
+	* @param int position the position of the first line
+	* @param int end the position after which no line starts
+	* @param MessageVisitor visitor what is done with each message
+	*
+	*/
+	private static void scanLines(ByteBuffer lines, int position, int end, MessageVisitor visitor) {
+		int limit = lines.limit();
+		while (position < end) {
+			int lineEnd = position;
+			while (lineEnd < limit && lines.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			if (lineEnd == limit) {
+				return;
+			}
+			int contentEnd = lineEnd > position && lines.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+			parseLine(lines, position, contentEnd, visitor);
+			position = lineEnd + 1;
+		}
+	}
+
+	/**
+	*
+	* This method parses the header of a message, written by the client as
+	* "[ user - address - yyyy-MM-dd@HH:mm:ss ] : text". The header ends at
+	* the first " ] : " and is read from its end, since only the user name
+	* may contain the separators. A line whose date is not valid is not a
+	* message.
+	*
+	* @param ByteBuffer lines the buffer containing the line
+	* @param int start the position of the line
+	* @param int end the position of the end of the line
+	* @param MessageVisitor visitor what is done with the message
+	*
+	*/
+	private static void parseLine(ByteBuffer lines, int start, int end, MessageVisitor visitor) {
+		int headerEnd = indexOf(lines, HEADER_END, start + 2, end);
+		int dateStart = headerEnd - DATE_LENGTH;
+		if (end - start < 2 || lines.get(start) != '[' || lines.get(start + 1) != ' ' || headerEnd < 0
+				|| dateStart - FIELD_SEPARATOR.length < start + 2
+				|| !equalsAt(lines, dateStart - FIELD_SEPARATOR.length, dateStart, FIELD_SEPARATOR)
+				|| !isValidDate(lines, dateStart)) {
+			visitor.skip();
+			return;
+		}
+		int addressStart = dateStart - FIELD_SEPARATOR.length;
+		while (addressStart > start + 2 && !equalsAt(lines, addressStart - FIELD_SEPARATOR.length, addressStart, FIELD_SEPARATOR)) {
+			addressStart--;
+		}
+		if (addressStart == start + 2) {
+			visitor.skip();
+			return;
+		}
+		visitor.visit(lines, start + 2, addressStart, dateStart, headerEnd + HEADER_END.length, end);
+	}
+
+	/**
+	*
+	* This method finds bytes between two positions of a buffer.
+	*
+	* @param ByteBuffer lines the buffer
+	* @param byte[] target the bytes to find
+	* @param int start the position to search from
+	* @param int end the position to search to
+	* @return int the position of the bytes, -1 if they are not found
+	*
+	*/
+	private static int indexOf(ByteBuffer lines, byte[] target, int start, int end) {
+		for (int position = start; position <= end - target.length; position++) {
+			if (lines.get(position) == target[0] && equalsAt(lines, position, position + target.length, target)) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	*
+	* This method tells if bytes between two positions of a buffer are
+	* the same as other bytes.
+	*
+	* @param ByteBuffer lines the buffer
+	* @param int start the position of the bytes
+	* @param int end the position of the end of the bytes
+	* @param byte[] expected the other bytes
+	* @return boolean true if the bytes are the same
+	*
+	*/
+	private static boolean equalsAt(ByteBuffer lines, int start, int end, byte[] expected) {
+		if (end - start != expected.length) {
+			return false;
+		}
+		for (int index = 0; index < expected.length; index++) {
+			if (lines.get(start + index) != expected[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	*
+	* This method compares the date of a message with another date. Dates
+	* are compared as text, which follows their order.
+	*
+	* @param ByteBuffer lines the buffer containing the date
+	* @param int dateStart the position of the date
+	* @param byte[] date the other date, which may be shorter
+	* @return int a negative number if the date is before the other date, 0 if it starts with it, a positive number otherwise
+	*
+	*/
+	private static int compareAt(ByteBuffer lines, int dateStart, byte[] date) {
+		for (int index = 0; index < Math.min(date.length, DATE_LENGTH); index++) {
+			int difference = lines.get(dateStart + index) - date[index];
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	*
+	* This method tells if a date is written yyyy-MM-dd@HH:mm:ss with a
+	* month, a day, an hour, a minute and a second in their ranges.
+	*
+	* @param ByteBuffer lines the buffer containing the date
+	* @param int dateStart the position of the date
+	* @return boolean true if the date is valid
+	*
+	*/
+	private static boolean isValidDate(ByteBuffer lines, int dateStart) {
+		for (int index = 0; index < DATE_LENGTH; index++) {
+			byte character = lines.get(dateStart + index);
+			boolean isExpected = DATE_PATTERN[index] == '0'
+					? character >= '0' && character <= '9' : character == DATE_PATTERN[index];
+			if (!isExpected) {
+				return false;
+			}
+		}
+		int month = readNumber(lines, dateStart + 5);
+		int day = readNumber(lines, dateStart + 8);
+		return month >= 1 && month <= 12 && day >= 1 && day <= 31 && readNumber(lines, dateStart + 11) <= 23
+				&& readNumber(lines, dateStart + 14) <= 59 && readNumber(lines, dateStart + 17) <= 59;
+	}
+
+	/**
+	*
+	* This method reads a number of two digits.
+	*
+	* @param ByteBuffer lines the buffer containing the digits
+	* @param int position the position of the first digit
+	* @return int the number
+	*
+	*/
+	private static int readNumber(ByteBuffer lines, int position) {
+		return (lines.get(position) - '0') * 10 + (lines.get(position + 1) - '0');
+	}
+
+	/**
+	*
+	* This method reads the hour of the date of a message as a number
+	* written yyyyMMddHH. The date must have been validated.
+	*
+	* @param ByteBuffer lines the buffer containing the date
+	* @param int dateStart the position of the date
+	* @return int the hour of the message
+	*
+	*/
+	private static int parseHour(ByteBuffer lines, int dateStart) {
+		int hour = 0;
+		for (int index: HOUR_DIGITS) {
+			hour = hour * 10 + (lines.get(dateStart + index) - '0');
+		}
+		return hour;
+	}
+
+	/**
+	*
+	* This method formats an hour read by parseHour.
+	*
+	* @param int hour the hour, written yyyyMMddHH
+	* @return String the hour written yyyy-MM-dd@HH
+	*
+	*/
+	private static String formatHour(int hour) {
+		String digits = String.format("%010d", hour);
+		return digits.substring(0, 4) + "-" + digits.substring(4, 6) + "-" + digits.substring(6, 8) + "@" + digits.substring(8);
+	}
+
+	/**
+	*
+	* This method builds a string with one character per byte, which is
+	* much cheaper than decoding UTF-8.
+	*
+	* @param ByteBuffer lines the buffer
+	* @param int start the position of the bytes
+	* @param int end the position of the end of the bytes
+	* @return String the bytes as ISO-8859-1 characters
+	*
+	*/
+	private static String decodeLatin1(ByteBuffer lines, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		lines.get(start, bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	*
+	* This method decodes a string built by decodeLatin1 as UTF-8.
+	*
+	* @param String latin1 the bytes as ISO-8859-1 characters
+	* @return String the decoded string
+	*
+	*/
+	private static String decodeUtf8(String latin1) {
+		return new String(latin1.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+	}
+
+	/**
+	*
+	* This method sorts counts from the largest and keeps the first ones.
+	*
+	* @param Map<K, long[]> counts the counts
+	* @return List<Map.Entry<K, long[]>> the largest counts
+	*
+	*/
+	private static <K> List<Map.Entry<K, long[]>> top(Map<K, long[]> counts) {
+		List<Map.Entry<K, long[]>> entries = new ArrayList<>(counts.entrySet());
+		entries.sort((first, second) -> Long.compare(second.getValue()[0], first.getValue()[0]));
+		return entries.subList(0, Math.min(TOP_LIMIT, entries.size()));
+	}
+}
@@ -0,0 +1,201 @@
+/*********************************************************************
+ *
+ * This file java file contains the class LoginPipeline which logs in
+ * the clients whose connections were accepted by the server. A login
+ * goes through four stages : reading the credentials, verifying them,
+ * registering the client and replaying the old messages to it. Only
+ * the expensive stages run on bounded pools : passwords are verified
+ * by the auth workers of the authentication service and old messages
+ * are replayed by the replayers, so that a reconnect storm queues on
+ * the stage that is overloaded. Reading the credentials waits for the
+ * client and registering it takes a user name and answers the client,
+ * so both run on the connection's own thread : on a shared pool, idle
+ * or slow clients would hold its threads and stall the other logins.
+ * A connection is closed, and the client told why, if the queue of its
+ * next stage is full or if a step of its login takes too long. Since
+ * the client sends the credentials as soon as it connects, only its
+ * own machine is waited for : a user retyping a password reconnects.
+ *
+ * file: LoginPipeline.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoginPipeline {
+
+	private static long HANDSHAKE_TIMEOUT_MS = Long.getLong("chat.login.timeoutMs", 10000);
+
+	private static int REPLAY_WORKERS = 4;
+
+	private static int STAGE_QUEUE_LIMIT = 1024;
+
+	private ThreadPoolExecutor replayers;
+
+	/**
+	*
+	* This interface represents the work of a stage for a client.
+	*
+	*/
+	private interface Stage {
+
+		/**
+		*
+		* This method runs the stage.
+		*
+		* @throws IOException if an I/O error occurs with the client
+		*
+		*/
+		void run() throws IOException;
+	}
+
+	/**
+	*
+	* Constructs a new LoginPipeline object. The credentials are verified
+	* by the auth workers of the authentication service of the clients, so
+	* only the replay stage has its own threads here.
+	*
+	*/
+	public LoginPipeline() {
+		this.replayers = createStage("login-replayer", REPLAY_WORKERS);
+	}
+
+	/**
+	*
+	* This method starts the login of a client whose connection was just
+	* accepted, on the connection's own thread.
+	*
+	* @param ClientHandler client the handler of the client
+	*
+	*/
+	public void submit(ClientHandler client) {
+		client.startLogin(this);
+	}
+
+	/**
+	*
+	* This method logs in a client. It runs on the connection's own thread,
+	* which reads the credentials and the history request of the client
+	* and waits for the stages running on the bounded pools. Each time the
+	* client is asked for its credentials again, it has a whole handshake
+	* timeout to answer. If the login fails, the connection is closed.
+	*
+	* @param ClientHandler client the handler of the client
+	* @return boolean true if the client joined the room, false if its connection was closed
+	*
+	*/
+	public boolean logIn(ClientHandler client) {
+		try {
+			client.beginHandshake(HANDSHAKE_TIMEOUT_MS);
+			boolean isLoggedIn = false;
+			while (!isLoggedIn) {
+				client.readCredentials();
+				isLoggedIn = client.register(await(client, client.verifyCredentials()));
+			}
+			client.readHistoryRequest();
+			await(client, runStage(replayers, client, client::replayHistory));
+			return true;
+		} catch (SocketTimeoutException e) {
+			client.abortHandshake("the login took too long.");
+			return false;
+		} catch (IOException e) {
+			client.abortHandshake(e.getMessage() != null ? e.getMessage() : "the connection was closed.");
+			return false;
+		}
+	}
+
+	/**
+	*
+	* This method queues a stage of the login of a client on a bounded pool.
+	* The stage is skipped if the deadline of the login passed while it
+	* was queued.
+	*
+	* @param ThreadPoolExecutor executor the threads of the stage
+	* @param ClientHandler client the handler of the client
+	* @param Stage stage the work of the stage for the client
+	* @return CompletableFuture<Void> the completion of the stage, completed
+	* exceptionally with an UncheckedIOException if the stage fails
+	* @throws IOException if the queue of the stage is full
+	*
+	*/
+	private static CompletableFuture<Void> runStage(ThreadPoolExecutor executor, ClientHandler client, Stage stage)
+			throws IOException {
+		try {
+			return CompletableFuture.runAsync(() -> {
+				try {
+					if (client.isHandshakeExpired()) {
+						throw new IOException("the login took too long.");
+					}
+					stage.run();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, executor);
+		} catch (RejectedExecutionException e) {
+			throw new IOException("the server is overloaded.");
+		}
+	}
+
+	/**
+	*
+	* This method waits for a stage of the login of a client until the
+	* deadline of the login. A late stage is cancelled, so that it is
+	* skipped if it did not start yet.
+	*
+	* @param ClientHandler client the handler of the client
+	* @param Future<T> stage the result of the stage
+	* @return T the result of the stage
+	* @throws IOException if the stage failed or the login is late
+	*
+	*/
+	private static <T> T await(ClientHandler client, Future<T> stage) throws IOException {
+		try {
+			return stage.get(Math.max(0, client.getHandshakeRemainingMs()), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			stage.cancel(false);
+			throw new IOException("the login took too long.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IOException("the login failed : " + e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("the server is stopping.");
+		}
+	}
+
+	/**
+	*
+	* This method creates the bounded pool of threads of a stage.
+	*
+	* @param String name the name of the stage
+	* @param int workers the number of threads of the stage
+	* @return ThreadPoolExecutor the threads of the stage
+	*
+	*/
+	private static ThreadPoolExecutor createStage(String name, int workers) {
+		AtomicInteger workerCount = new AtomicInteger();
+		return new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(STAGE_QUEUE_LIMIT),
+				runnable -> {
+					Thread thread = new Thread(runnable, name + "-" + workerCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+}
@@ -0,0 +1,181 @@
+/*********************************************************************
+ *
+ * This file java file contains the class MessageHistory which
+ * represents the history of the chat room. It adds the messages
+ * received from clients to the messages log, assigns them a
+ * monotonic sequence number, which is their line number in the
+ * log's segments, and keeps the 15 most recent messages in memory so
+ * that they can be sent to the clients logging in.
+ *
+ * file: MessageHistory.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageHistory {
+
+	private static int LIMIT = 15;
+
+	private static int FIRST_MESSAGE = 0;
+
+	private MessageLog messageLog;
+
+	private ArrayList<String> messages = new ArrayList<>();
+
+	private long lastSequence = 0;
+
+	/**
+	*
+	* Constructs a new MessageHistory object.
+	*
+	* @param MessageLog messageLog the messages log
+	*
+	*/
+	public MessageHistory(MessageLog messageLog) {
+		this.messageLog = messageLog;
+	}
+
+	/**
+	*
+	* This method adds a new message to the messages log and to the
+	* most recent messages, and assigns it the next sequence number. A
+	* message containing a line break is refused, since it would take
+	* several lines of the log and shift every sequence number after it.
+	*
+	* @param String message the message to add
+	* @return long the sequence number of the message
+	* @throws IOException if an I/O error occurs while writing the message
+	* @throws IllegalArgumentException if the message contains a line break
+	*
+	*/
+	public synchronized long append(String message) throws IOException {
+		if (hasLineBreak(message)) {
+			throw new IllegalArgumentException("A message of the log cannot contain a line break.");
+		}
+		messageLog.append(lastSequence + 1, message);
+		restore(message);
+		return lastSequence;
+	}
+
+	/**
+	*
+	* This method verifies if a message contains a line break, which cannot
+	* be added to the history.
+	*
+	* @param String message the message to verify
+	* @return boolean true if the message contains a carriage return or a new line
+	*
+	*/
+	public static boolean hasLineBreak(String message) {
+		return message.indexOf('\n') >= 0 || message.indexOf('\r') >= 0;
+	}
+
+	/**
+	*
+	* This method adds a message read from the messages database to the
+	* most recent messages when the server starts.
+	*
+	* @param String message the message read
+	*
+	*/
+	public synchronized void restore(String message) {
+		if (messages.size() == LIMIT) {
+			messages.remove(FIRST_MESSAGE);
+		}
+		messages.add(message);
+		lastSequence++;
+	}
+
+	/**
+	*
+	* This method restores the most recent messages saved in a snapshot.
+	*
+	* @param List<String> savedMessages the most recent messages, from oldest to newest
+	* @param long savedLastSequence the sequence number of the newest message
+	*
+	*/
+	public synchronized void restore(List<String> savedMessages, long savedLastSequence) {
+		messages.clear();
+		messages.addAll(savedMessages);
+		lastSequence = savedLastSequence;
+	}
+
+	/**
+	*
+	* This method restores the most recent messages of the log's sealed
+	* segments when there is no snapshot, so that the messages of the
+	* active segment are added after them.
+	*
+	* @throws IOException if an I/O error occurs while reading the segments
+	*
+	*/
+	public synchronized void restoreSealedMessages() throws IOException {
+		long baseSequence = messageLog.getBaseSequence();
+		long fromSequence = Math.max(messageLog.getFirstSequence(), baseSequence - LIMIT + 1);
+		restore(messageLog.read(fromSequence, (int) Math.max(0, baseSequence - fromSequence + 1)), baseSequence);
+	}
+	
+	/**
+	*
+	* This method retrieves the most recent messages that are newer than a
+	* sequence number, each prefixed by its own sequence number. If the
+	* sequence number is newer than the history, the server's database was
+	* replaced and all the most recent messages are retrieved.
+	*
+	* @param long sequence the sequence number of the newest message known by the client
+	* @return List<String> the messages prefixed by their sequence number, from oldest to newest
+	*
+	*/
+	public synchronized List<String> getMessagesAfter(long sequence) {
+		List<String> newerMessages = new ArrayList<>();
+		long firstSequence = lastSequence - messages.size() + 1;
+		for (int index = 0; index < messages.size(); index++) {
+			if (firstSequence + index > sequence || sequence > lastSequence) {
+				newerMessages.add((firstSequence + index) + " " + messages.get(index));
+			}
+		}
+		return newerMessages;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets a copy of the most recent messages
+	*
+	* @return ArrayList<String> the most recent messages, from oldest to newest
+	*
+	*/
+	public synchronized ArrayList<String> getMessages() {
+		return new ArrayList<>(messages);
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the sequence number of the newest message
+	*
+	* @return long lastSequence the sequence number, 0 if there is no message
+	*
+	*/
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the messages log
+	*
+	* @return MessageLog messageLog the messages log
+	*
+	*/
+	public MessageLog getMessageLog() {
+		return messageLog;
+	}
+}
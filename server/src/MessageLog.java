@@ -0,0 +1,689 @@
+/*********************************************************************
+ *
+ * This file java file contains the class MessageLog which represents
+ * the messages database on disk. Messages are appended to the active
+ * segment, the messages database file. Once it is too big or too old,
+ * it is rolled over : renamed into a sealed segment named after the
+ * sequence numbers of its first and last messages. A background thread
+ * compresses the sealed segments in blocks that can still be read by
+ * sequence number, and deletes the oldest ones once they exceed the
+ * retention policy. The policy is configured with system properties.
+ *
+ * file: MessageLog.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MessageLog {
+
+	private static long SEGMENT_BYTES = Long.getLong("chat.messages.segmentBytes", 8L << 20);
+
+	private static long ROLLOVER_PERIOD_MS = TimeUnit.HOURS.toMillis(Long.getLong("chat.messages.rolloverHours", 24));
+
+	private static long RETENTION_BYTES = Long.getLong("chat.messages.retentionBytes", 1L << 30);
+
+	private static long RETENTION_AGE_MS = TimeUnit.DAYS.toMillis(Long.getLong("chat.messages.retentionDays", 30));
+
+	private static boolean SYNC_WRITES = Boolean.getBoolean("chat.messages.syncWrites");
+
+	private static long MAINTENANCE_PERIOD_MS = Long.getLong("chat.messages.maintenancePeriodMs", 30000);
+
+	private static String SEGMENT_EXTENSION = ".seg";
+
+	private static String COMPRESSED_EXTENSION = ".segz";
+
+	private String messagesDBName;
+
+	private String segmentPrefix;
+
+	private Path basePath;
+
+	private BufferedWriter writer;
+
+	private FileChannel writerChannel;
+
+	private long activeBytes = 0;
+
+	private long activeCreatedAt;
+
+	private long baseSequence = 0;
+
+	private ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+	private ScheduledExecutorService maintenance;
+
+	private LongAdder compressedReads = new LongAdder();
+
+	private LongAdder compressedReadNanos = new LongAdder();
+
+	private LongAccumulator compressedReadMaxNanos = new LongAccumulator(Math::max, 0);
+
+	private LongAdder plainReads = new LongAdder();
+
+	private LongAdder plainReadNanos = new LongAdder();
+
+	/**
+	*
+	* This class represents a sealed segment, compressed or not.
+	*
+	*/
+	private static class Segment {
+
+		private Path path;
+
+		private long firstSequence;
+
+		private long lastSequence;
+
+		private long sealedAt;
+
+		private long bytes;
+
+		private CompressedSegment compressed;
+
+		/**
+		*
+		* Constructs a new Segment object.
+		*
+		* @param Path path the path of the segment
+		* @param long firstSequence the sequence number of its first message
+		* @param long lastSequence the sequence number of its last message
+		* @param CompressedSegment compressed the compressed segment, null if it is not compressed
+		* @throws IOException if an I/O error occurs while reading its attributes
+		*
+		*/
+		private Segment(Path path, long firstSequence, long lastSequence, CompressedSegment compressed) throws IOException {
+			this.path = path;
+			this.firstSequence = firstSequence;
+			this.lastSequence = lastSequence;
+			this.sealedAt = Files.getLastModifiedTime(path).toMillis();
+			this.bytes = Files.size(path);
+			this.compressed = compressed;
+		}
+	}
+
+	/**
+	*
+	* Constructs a new MessageLog object.
+	*
+	* @param String messagesDBName the name of the messages database, the active segment
+	*
+	*/
+	public MessageLog(String messagesDBName) {
+		this.messagesDBName = messagesDBName;
+		this.segmentPrefix = messagesDBName.replaceFirst("\\.txt$", "") + "_";
+		this.basePath = Paths.get(messagesDBName.replaceFirst("\\.txt$", "") + ".base");
+	}
+
+	/**
+	*
+	* This method finds the sealed segments and the sequence number the
+	* active segment starts after. A segment both sealed and compressed,
+	* left by a compression that was interrupted, is kept compressed.
+	*
+	* @throws IOException if an I/O error occurs while reading the segments
+	*
+	*/
+	public void open() throws IOException {
+		Pattern segmentName = Pattern.compile(Pattern.quote(Paths.get(segmentPrefix).getFileName().toString())
+				+ "(\\d+)-(\\d+)(" + Pattern.quote(SEGMENT_EXTENSION) + "|" + Pattern.quote(COMPRESSED_EXTENSION) + ")");
+		Path directory = Paths.get(messagesDBName).toAbsolutePath().getParent();
+		List<Path> plainPaths = new ArrayList<>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+			for (Path path: paths) {
+				String fileName = path.getFileName().toString();
+				if (fileName.startsWith(Paths.get(segmentPrefix).getFileName().toString()) && fileName.endsWith(".tmp")) {
+					Files.delete(path);
+					continue;
+				}
+				Matcher matcher = segmentName.matcher(fileName);
+				if (!matcher.matches()) {
+					continue;
+				}
+				long firstSequence = Long.parseLong(matcher.group(1));
+				long lastSequence = Long.parseLong(matcher.group(2));
+				if (matcher.group(3).equals(SEGMENT_EXTENSION)) {
+					plainPaths.add(path);
+					continue;
+				}
+				try {
+					segments.put(firstSequence, new Segment(path, firstSequence, lastSequence, CompressedSegment.open(path)));
+				} catch (IOException e) {
+					System.out.println("Ignoring unreadable compressed segment : " + path);
+				}
+			}
+		}
+		for (Path path: plainPaths) {
+			Matcher matcher = segmentName.matcher(path.getFileName().toString());
+			matcher.matches();
+			long firstSequence = Long.parseLong(matcher.group(1));
+			if (segments.containsKey(firstSequence)) {
+				Files.delete(path);
+			} else {
+				segments.put(firstSequence, new Segment(path, firstSequence, Long.parseLong(matcher.group(2)), null));
+			}
+		}
+		activeCreatedAt = System.currentTimeMillis();
+		if (Files.exists(basePath)) {
+			try (DataInputStream reader = new DataInputStream(Files.newInputStream(basePath))) {
+				baseSequence = reader.readLong();
+				activeCreatedAt = reader.readLong();
+			}
+		}
+		long lastSealedSequence = segments.isEmpty() ? 0 : segments.lastEntry().getValue().lastSequence;
+		if (lastSealedSequence > baseSequence || !Files.exists(basePath)) {
+			baseSequence = Math.max(baseSequence, lastSealedSequence);
+			writeBase();
+		}
+		Path activePath = Paths.get(messagesDBName);
+		activeBytes = Files.exists(activePath) ? dropPartialLine(activePath) : 0;
+	}
+
+	/**
+	*
+	* This method drops the end of the last line of the active segment if
+	* it was not completely written before the server stopped, so that the
+	* next message starts its own line.
+	*
+	* @param Path activePath the path of the active segment
+	* @return long the size of the active segment
+	* @throws IOException if an I/O error occurs while reading or truncating the active segment
+	*
+	*/
+	private long dropPartialLine(Path activePath) throws IOException {
+		try (FileChannel active = FileChannel.open(activePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = active.size();
+			ByteBuffer block = ByteBuffer.allocate(8192);
+			long end = size;
+			for (boolean isLineEnd = false; end > 0 && !isLineEnd; ) {
+				long blockStart = Math.max(0, end - block.capacity());
+				block.clear().limit((int) (end - blockStart));
+				for (int read = 0; block.hasRemaining() && read >= 0; ) {
+					read = active.read(block, blockStart + block.position());
+				}
+				for (int position = block.limit() - 1; position >= 0 && !isLineEnd; position--) {
+					isLineEnd = block.get(position) == '\n';
+					if (!isLineEnd) {
+						end--;
+					}
+				}
+			}
+			if (end < size) {
+				System.out.println("Dropping a truncated message at the end of : " + messagesDBName);
+				active.truncate(end);
+			}
+			return end;
+		}
+	}
+
+	/**
+	*
+	* This method opens the active segment for appending and starts the
+	* background thread compressing and expiring the sealed segments.
+	*
+	* @throws IOException if an I/O error occurs while opening the active segment
+	*
+	*/
+	public void start() throws IOException {
+		synchronized (this) {
+			openWriter();
+		}
+		maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "message-log-maintenance");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		maintenance.scheduleWithFixedDelay(this::maintain, 0, MAINTENANCE_PERIOD_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	*
+	* This method stops the background thread and closes the active segment.
+	*
+	* @throws IOException if an I/O error occurs while closing the active segment
+	*
+	*/
+	public void close() throws IOException {
+		if (maintenance != null) {
+			maintenance.shutdown();
+			try {
+				maintenance.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			writer.close();
+		}
+	}
+
+	/**
+	*
+	* This method appends a message to the active segment. The active
+	* segment is rolled over first if it is too big or too old, which only
+	* renames it : compressing it is left to the background thread. The
+	* message is flushed to the system before returning, so that it
+	* survives a crash of the server, and forced to the disk if the
+	* chat.messages.syncWrites system property is set, so that it also
+	* survives a crash of the machine.
+	*
+	* @param long sequence the sequence number of the message
+	* @param String message the message to append
+	* @throws IOException if an I/O error occurs while writing the message
+	*
+	*/
+	public synchronized void append(long sequence, String message) throws IOException {
+		if (activeBytes >= SEGMENT_BYTES
+				|| (activeBytes > 0 && System.currentTimeMillis() - activeCreatedAt >= ROLLOVER_PERIOD_MS)) {
+			rollOver(sequence - 1);
+		}
+		writer.write(message);
+		writer.write('\n');
+		writer.flush();
+		if (SYNC_WRITES) {
+			writerChannel.force(false);
+		}
+		activeBytes += message.getBytes(StandardCharsets.UTF_8).length + 1;
+	}
+
+	/**
+	*
+	* This method reads messages starting at a sequence number from the
+	* sealed segments and the active segment. Messages that expired are
+	* skipped, so the first message read is the one of the sequence number
+	* given or of the first sequence number of the log, if it is newer.
+	*
+	* @param long fromSequence the sequence number of the first message to read
+	* @param int count the maximum number of messages to read
+	* @return List<String> the messages read, from oldest to newest
+	* @throws IOException if an I/O error occurs while reading a segment
+	*
+	*/
+	public List<String> read(long fromSequence, int count) throws IOException {
+		List<String> messages = new ArrayList<>();
+		long sequence = fromSequence;
+		Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+		if (entry == null) {
+			entry = segments.ceilingEntry(sequence);
+		}
+		while (entry != null && messages.size() < count) {
+			Segment segment = entry.getValue();
+			if (sequence <= segment.lastSequence) {
+				sequence = Math.max(sequence, segment.firstSequence);
+				messages.addAll(readSegment(segment, sequence, count - messages.size()));
+			}
+			sequence = Math.max(sequence, segment.lastSequence + 1);
+			entry = segments.higherEntry(entry.getKey());
+		}
+		if (messages.size() < count) {
+			FileChannel active;
+			long activeBaseSequence;
+			synchronized (this) {
+				activeBaseSequence = baseSequence;
+				try {
+					active = FileChannel.open(Paths.get(messagesDBName), StandardOpenOption.READ);
+				} catch (NoSuchFileException e) {
+					return messages;
+				}
+			}
+			if (activeBaseSequence >= sequence) {
+				active.close();
+				messages.addAll(read(sequence, count - messages.size()));
+				return messages;
+			}
+			long start = System.nanoTime();
+			try (InputStream reader = new BufferedInputStream(Channels.newInputStream(active), 1 << 16)) {
+				messages.addAll(readLines(reader, activeBaseSequence + 1, sequence, count - messages.size()));
+			}
+			plainReads.increment();
+			plainReadNanos.add(System.nanoTime() - start);
+		}
+		return messages;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the sequence number of the last message before the
+	* active segment
+	*
+	* @return long baseSequence the sequence number, 0 if nothing was rolled over
+	*
+	*/
+	public synchronized long getBaseSequence() {
+		return baseSequence;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the sequence number of the oldest message kept
+	*
+	* @return long the sequence number of the first message of the oldest segment
+	*
+	*/
+	public synchronized long getFirstSequence() {
+		return segments.isEmpty() ? baseSequence + 1 : segments.firstKey();
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the name of the messages database, the active segment
+	*
+	* @return String messagesDBName the name of the messages database
+	*
+	*/
+	public String getMessagesDBName() {
+		return messagesDBName;
+	}
+
+	/**
+	*
+	* This method describes the disk usage of the log and the latency of
+	* the reads of its segments.
+	*
+	* @return String the description of the log
+	*
+	*/
+	public String describeStatistics() {
+		long sealedBytes = 0;
+		long compressedBytes = 0;
+		long compressedRawBytes = 0;
+		int sealedCount = 0;
+		int compressedCount = 0;
+		for (Segment segment: segments.values()) {
+			if (segment.compressed == null) {
+				sealedCount++;
+				sealedBytes += segment.bytes;
+			} else {
+				compressedCount++;
+				compressedBytes += segment.bytes;
+				compressedRawBytes += segment.compressed.getRawBytes();
+			}
+		}
+		long activeKiloBytes;
+		synchronized (this) {
+			activeKiloBytes = activeBytes / 1024;
+		}
+		long reads = compressedReads.sum();
+		long uncompressedReads = plainReads.sum();
+		return "the messages log uses " + (activeKiloBytes + (sealedBytes + compressedBytes) / 1024) + " KB on disk : "
+				+ activeKiloBytes + " KB in the active segment, " + sealedCount + " sealed segments of "
+				+ (sealedBytes / 1024) + " KB and " + compressedCount + " compressed segments of "
+				+ (compressedBytes / 1024) + " KB holding " + (compressedRawBytes / 1024) + " KB of messages. "
+				+ reads + " reads of compressed segments"
+				+ (reads == 0 ? "" : " (" + (compressedReadNanos.sum() / reads / 1000) + " us on average, "
+						+ (compressedReadMaxNanos.get() / 1000) + " us at most)")
+				+ ", " + uncompressedReads + " reads of uncompressed segments"
+				+ (uncompressedReads == 0 ? "" : " (" + (plainReadNanos.sum() / uncompressedReads / 1000) + " us on average)")
+				+ ".";
+	}
+
+	/**
+	*
+	* This method renames the active segment into a sealed segment and
+	* records the sequence number the new active segment starts after.
+	*
+	* @param long lastSequence the sequence number of the last message of the active segment
+	* @throws IOException if an I/O error occurs while renaming the active segment
+	*
+	*/
+	private void rollOver(long lastSequence) throws IOException {
+		writer.close();
+		Path sealedPath = Paths.get(segmentPrefix + (baseSequence + 1) + "-" + lastSequence + SEGMENT_EXTENSION);
+		Files.move(Paths.get(messagesDBName), sealedPath, StandardCopyOption.ATOMIC_MOVE);
+		segments.put(baseSequence + 1, new Segment(sealedPath, baseSequence + 1, lastSequence, null));
+		baseSequence = lastSequence;
+		activeCreatedAt = System.currentTimeMillis();
+		activeBytes = 0;
+		writeBase();
+		openWriter();
+	}
+
+	/**
+	*
+	* This method compresses the sealed segments and deletes the oldest
+	* ones, beyond the retention size or age. It runs on the background
+	* thread and never holds the lock of the active segment.
+	*
+	*/
+	private void maintain() {
+		boolean isChanged = false;
+		try {
+			for (Segment segment: segments.values()) {
+				if (segment.compressed == null) {
+					compress(segment);
+					isChanged = true;
+				}
+			}
+			long retainedBytes = 0;
+			for (Segment segment: segments.values()) {
+				retainedBytes += segment.bytes;
+			}
+			long now = System.currentTimeMillis();
+			for (Segment segment: segments.values()) {
+				if (retainedBytes <= RETENTION_BYTES && now - segment.sealedAt <= RETENTION_AGE_MS) {
+					break;
+				}
+				segments.remove(segment.firstSequence);
+				Files.deleteIfExists(segment.path);
+				retainedBytes -= segment.bytes;
+				isChanged = true;
+			}
+		} catch (IOException e) {
+			System.out.println("An error occurred while compacting the messages log : " + messagesDBName);
+			e.printStackTrace();
+		}
+		if (isChanged) {
+			System.out.println("Messages log : " + describeStatistics());
+		}
+	}
+
+	/**
+	*
+	* This method compresses a sealed segment in a temporary file, moves it
+	* next to the sealed segment, then replaces the sealed segment with it.
+	* The compressed segment is forced to the disk before it is moved, and
+	* the move before the sealed segment is deleted, so that a crash of
+	* the machine always leaves one of them complete.
+	*
+	* @param Segment segment the sealed segment to compress
+	* @throws IOException if an I/O error occurs while compressing the segment
+	*
+	*/
+	private void compress(Segment segment) throws IOException {
+		String fileName = segment.path.toString();
+		Path compressedPath = Paths.get(fileName.substring(0, fileName.length() - SEGMENT_EXTENSION.length()) + COMPRESSED_EXTENSION);
+		Path temporaryPath = Paths.get(compressedPath + ".tmp");
+		CompressedSegment.compress(segment.path, temporaryPath, segment.firstSequence);
+		Files.move(temporaryPath, compressedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		forceDirectory(compressedPath.toAbsolutePath().getParent());
+		Segment compressedSegment = new Segment(compressedPath, segment.firstSequence, segment.lastSequence,
+				CompressedSegment.open(compressedPath));
+		compressedSegment.sealedAt = segment.sealedAt;
+		segments.put(segment.firstSequence, compressedSegment);
+		Files.delete(segment.path);
+	}
+
+	/**
+	*
+	* This method forces the entries of a directory to the disk, so that a
+	* file moved in it stays moved after a crash of the machine. Some
+	* systems cannot open a directory, in which case nothing is forced.
+	*
+	* @param Path directory the directory
+	*
+	*/
+	private static void forceDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			return;
+		}
+	}
+
+	/**
+	*
+	* This method reads messages of a sealed segment and records the
+	* latency of the read. If the segment was compressed or deleted while
+	* it was being opened, the segment replacing it is read instead.
+	*
+	* @param Segment segment the sealed segment
+	* @param long fromSequence the sequence number of the first message to read
+	* @param int count the maximum number of messages to read
+	* @return List<String> the messages read, from oldest to newest
+	* @throws IOException if an I/O error occurs while reading the segment
+	*
+	*/
+	private List<String> readSegment(Segment segment, long fromSequence, int count) throws IOException {
+		long start = System.nanoTime();
+		try {
+			if (segment.compressed != null) {
+				List<String> messages = segment.compressed.read(fromSequence, count);
+				long nanos = System.nanoTime() - start;
+				compressedReads.increment();
+				compressedReadNanos.add(nanos);
+				compressedReadMaxNanos.accumulate(nanos);
+				return messages;
+			}
+			try (InputStream reader = new BufferedInputStream(Files.newInputStream(segment.path), 1 << 16)) {
+				List<String> messages = readLines(reader, segment.firstSequence, fromSequence, count);
+				plainReads.increment();
+				plainReadNanos.add(System.nanoTime() - start);
+				return messages;
+			}
+		} catch (NoSuchFileException e) {
+			Segment replacement = segments.get(segment.firstSequence);
+			return replacement == null || replacement == segment ? new ArrayList<>() : readSegment(replacement, fromSequence, count);
+		}
+	}
+
+	/**
+	*
+	* This method reads complete lines of an uncompressed segment. A line
+	* still being written at the end of the active segment is not read.
+	* Lines end with '\n' only, as in compressed segments, so that every
+	* reader of the log, including the server restoring its history when
+	* it starts, numbers the messages the same way.
+	*
+	* @param InputStream reader the segment
+	* @param long firstSequence the sequence number of the first line of the segment
+	* @param long fromSequence the sequence number of the first message to read
+	* @param int count the maximum number of messages to read
+	* @return List<String> the messages read, from oldest to newest
+	* @throws IOException if an I/O error occurs while reading the segment
+	*
+	*/
+	public static List<String> readLines(InputStream reader, long firstSequence, long fromSequence, int count) throws IOException {
+		List<String> messages = new ArrayList<>();
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		long sequence = firstSequence;
+		int nextByte;
+		while (messages.size() < count && (nextByte = reader.read()) != -1) {
+			if (nextByte != '\n') {
+				if (sequence >= fromSequence) {
+					line.write(nextByte);
+				}
+				continue;
+			}
+			if (sequence >= fromSequence) {
+				messages.add(line.toString(StandardCharsets.UTF_8));
+				line.reset();
+			}
+			sequence++;
+		}
+		return messages;
+	}
+
+	/**
+	*
+	* This method hands each complete line of an uncompressed segment to an
+	* action as soon as it is read, without keeping the lines, so that a
+	* whole segment can be read to keep only its last lines. Lines end with
+	* '\n' only, as in readLines, and a line still being written at the
+	* end of the active segment is not read.
+	*
+	* @param InputStream reader the segment
+	* @param Consumer<String> action what is done with each line
+	* @throws IOException if an I/O error occurs while reading the segment
+	*
+	*/
+	public static void forEachLine(InputStream reader, Consumer<String> action) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int nextByte;
+		while ((nextByte = reader.read()) != -1) {
+			if (nextByte != '\n') {
+				line.write(nextByte);
+				continue;
+			}
+			action.accept(line.toString(StandardCharsets.UTF_8));
+			line.reset();
+		}
+	}
+
+	/**
+	*
+	* This method writes the sequence number the active segment starts
+	* after and its creation date in a temporary file, then moves it over
+	* the previous one.
+	*
+	* @throws IOException if an I/O error occurs while writing the file
+	*
+	*/
+	private void writeBase() throws IOException {
+		Path temporaryPath = Paths.get(basePath + ".tmp");
+		try (DataOutputStream baseWriter = new DataOutputStream(Files.newOutputStream(temporaryPath))) {
+			baseWriter.writeLong(baseSequence);
+			baseWriter.writeLong(activeCreatedAt);
+		}
+		Files.move(temporaryPath, basePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	*
+	* This method opens the active segment for appending.
+	*
+	* @throws IOException if an I/O error occurs while opening the active segment
+	*
+	*/
+	private void openWriter() throws IOException {
+		writerChannel = FileChannel.open(Paths.get(messagesDBName), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		writer = new BufferedWriter(Channels.newWriter(writerChannel, StandardCharsets.UTF_8));
+	}
+}
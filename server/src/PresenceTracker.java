@@ -0,0 +1,250 @@
+/*********************************************************************
+ *
+ * This file java file contains the class PresenceTracker which
+ * coalesces the logins and logouts of the chat room into periodic
+ * presence frames. Instead of broadcasting a notice to the whole
+ * room for every connection, the users whose presence changed are
+ * marked and, every flush period, a single versioned delta frame
+ * listing the users who joined and left is sent to all connected
+ * clients. It also answers roster requests with the full online set
+ * or with the deltas a client missed since the version it knows.
+ *
+ * file: PresenceTracker.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class PresenceTracker {
+
+	private static int FLUSH_PERIOD_MS = 250;
+
+	private static int DELTA_HISTORY_LIMIT = 64;
+
+	private static int MAX_FRAME_CHARS = 20000;
+
+	private static int CONSOLE_NAMES_LIMIT = 20;
+
+	private long version = 0;
+
+	private Set<String> changedUsers = ConcurrentHashMap.newKeySet();
+
+	private TreeSet<String> roster = new TreeSet<>();
+
+	private ArrayDeque<PresenceDelta> deltaHistory = new ArrayDeque<>();
+
+	private ConcurrentHashMap<String, ClientHandler> connectedClients;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	*
+	* Constructs a new PresenceTracker object.
+	*
+	* @param ConcurrentHashMap<String, ClientHandler> connectedClients the concurrent hash map of connected clients
+	*
+	*/
+	public PresenceTracker(ConcurrentHashMap<String, ClientHandler> connectedClients) {
+		this.connectedClients = connectedClients;
+	}
+
+	/**
+	*
+	* This method starts the background thread flushing the presence
+	* changes to all connected clients every flush period.
+	*
+	*/
+	public void start() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "presence-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this::flush, FLUSH_PERIOD_MS, FLUSH_PERIOD_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	*
+	* This method marks a user whose presence changed. It must be called
+	* after the user was added to or removed from the connected clients.
+	*
+	* @param String username the user name of the user who joined or left
+	*
+	*/
+	public void markChanged(String username) {
+		changedUsers.add(username);
+	}
+
+	/**
+	*
+	* This method compares the marked users with the connected clients and
+	* sends one delta frame to every client accepting presence notices.
+	* A user who joined and left during the same period is never announced.
+	* The frames of a delta are sent to a client in a row, so that they are
+	* never interleaved with the frames of a roster answer.
+	*
+	*/
+	public void flush() {
+		List<String> lines = new ArrayList<>();
+		long flushedVersion;
+		synchronized (this) {
+			PresenceDelta delta = new PresenceDelta(version + 1);
+			for (String username: changedUsers) {
+				changedUsers.remove(username);
+				ClientHandler client = connectedClients.get(username);
+				boolean isOnline = client != null && client.isJoined();
+				if (isOnline && roster.add(username)) {
+					delta.joined.add(username);
+				} else if (!isOnline && roster.remove(username)) {
+					delta.left.add(username);
+				}
+			}
+			if (delta.joined.isEmpty() && delta.left.isEmpty()) {
+				return;
+			}
+			version = delta.version;
+			flushedVersion = version;
+			deltaHistory.addLast(delta);
+			if (deltaHistory.size() > DELTA_HISTORY_LIMIT) {
+				deltaHistory.removeFirst();
+			}
+			delta.joined.forEach(username -> lines.add("+" + username));
+			delta.left.forEach(username -> lines.add("-" + username));
+			if (lines.size() <= CONSOLE_NAMES_LIMIT) {
+				System.out.println("Presence update " + flushedVersion + " : joined " + delta.joined + ", left " + delta.left);
+			} else {
+				System.out.println("Presence update " + flushedVersion + " : " + delta.joined.size()
+						+ " users joined, " + delta.left.size() + " users left");
+			}
+		}
+		List<String> frames = encodeFrames("#PRESENCE " + flushedVersion, lines);
+		for (ClientHandler client: connectedClients.values()) {
+			if (!client.isJoined() || !client.getSubscriptionFilter().acceptsPresence()) {
+				continue;
+			}
+			try {
+				client.sendFrames(frames);
+			} catch (IOException e) {
+				System.out.println("An error occurred while sending presence update to " + client.getUsername() + ".");
+			}
+		}
+	}
+
+	/**
+	*
+	* This method builds the answer to a roster request. If the client
+	* already knows the current version, it is told the roster is unchanged.
+	* If the deltas since the version known by the client are still kept,
+	* only the net changes are sent. Else, the full online set is sent.
+	*
+	* @param long knownVersion the last roster version applied by the client, -1 if none
+	* @return List<String> the frames answering the request
+	*
+	*/
+	public synchronized List<String> getRosterFrames(long knownVersion) {
+		if (knownVersion == version) {
+			return encodeFrames("#ROSTER " + version + " unchanged", new ArrayList<>());
+		}
+		if (knownVersion >= 0 && knownVersion < version && !deltaHistory.isEmpty()
+				&& deltaHistory.peekFirst().version <= knownVersion + 1) {
+			Map<String, boolean[]> netChanges = new LinkedHashMap<>();
+			for (PresenceDelta delta: deltaHistory) {
+				if (delta.version > knownVersion) {
+					delta.left.forEach(username -> recordChange(netChanges, username, false));
+					delta.joined.forEach(username -> recordChange(netChanges, username, true));
+				}
+			}
+			List<String> lines = new ArrayList<>();
+			netChanges.forEach((username, states) -> {
+				if (states[0] != states[1]) {
+					lines.add((states[1] ? "+" : "-") + username);
+				}
+			});
+			return encodeFrames("#ROSTER " + version + " delta", lines);
+		}
+		return encodeFrames("#ROSTER " + version + " full", new ArrayList<>(roster));
+	}
+
+	/**
+	*
+	* This method records the presence of a user after a delta, remembering
+	* the presence the user had before the first delta.
+	*
+	* @param Map<String, boolean[]> netChanges the initial and final presence of each user
+	* @param String username the user name whose presence changed
+	* @param boolean isOnline the presence of the user after the delta
+	*
+	*/
+	private static void recordChange(Map<String, boolean[]> netChanges, String username, boolean isOnline) {
+		netChanges.computeIfAbsent(username, name -> new boolean[] { !isOnline, isOnline })[1] = isOnline;
+	}
+
+	/**
+	*
+	* This method splits the lines of a presence or roster answer into
+	* frames small enough to be sent with writeUTF. Every frame starts with
+	* the header followed by its index and the number of frames.
+	*
+	* @param String header the header of the frames
+	* @param List<String> lines the user names prefixed by their change
+	* @return List<String> the frames to send
+	*
+	*/
+	private static List<String> encodeFrames(String header, List<String> lines) {
+		List<StringBuilder> builders = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		builders.add(current);
+		for (String line: lines) {
+			if (current.length() > 0 && current.length() + line.length() > MAX_FRAME_CHARS) {
+				current = new StringBuilder();
+				builders.add(current);
+			}
+			current.append('\n').append(line);
+		}
+		List<String> frames = new ArrayList<>();
+		for (int index = 0; index < builders.size(); index++) {
+			frames.add(header + " " + (index + 1) + "/" + builders.size() + builders.get(index));
+		}
+		return frames;
+	}
+
+	/**
+	*
+	*	This class contains the users who joined and left the chat room
+	*	during one flush period.
+	*
+	*/
+	private static class PresenceDelta {
+
+		private final long version;
+
+		private final List<String> joined = new ArrayList<>();
+
+		private final List<String> left = new ArrayList<>();
+
+		/**
+		*
+		* Constructs a new PresenceDelta object.
+		*
+		* @param long version the roster version reached after the delta
+		*
+		*/
+		public PresenceDelta(long version) {
+			this.version = version;
+		}
+	}
+}
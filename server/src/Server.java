@@ -11,14 +11,17 @@
  * file: Server.java
  * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
  * date: 18 may 2023
- * modified: 21 may 2023
+ * modified: 18 october 2026
  *
  **********************************************************************/
 
+import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
 import java.io.BufferedReader;
 import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.InputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -29,14 +32,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 
 public class Server {
 	
-	private int serverPort;
+	private static int ACCEPTORS = Integer.getInteger("chat.server.acceptors", 2);
 	
-	private static int LIMIT = 15;
+	private static int BACKLOG = Integer.getInteger("chat.server.backlog", 1024);
 	
-	private static int FIRST_MESSAGE = 0;
+	private int serverPort;
 	
 	private String serverAddress;
 	
@@ -48,18 +52,43 @@ public class Server {
 	
 	private String userCredentialsDBName;
 	
+	private String credentialsDBName;
+	
+	private String credentialsIndexName;
+	
+	private String sessionSecretName;
+	
 	private String messagesDBName;
 	
-	private ConcurrentHashMap<String, String> usersCredentials = new ConcurrentHashMap<>();
+	private String snapshotName;
+	
+	private ServerSnapshot serverSnapshot;
+	
+	private CredentialStore credentialStore;
+	
+	private AuthService authService;
 	
-	private ConcurrentHashMap<String, ArrayList<String>> messagesSync = new ConcurrentHashMap<>();
+	private MessageLog messageLog;
+	
+	private MessageHistory messageHistory;
 	
 	private ConcurrentHashMap<String, ClientHandler> connectedClients = new ConcurrentHashMap<>();
 	
+	private PresenceTracker presenceTracker = new PresenceTracker(connectedClients);
+	
+	private TrafficRecorder trafficRecorder = TrafficRecorder.DISABLED;
+	
+	private LoginPipeline loginPipeline = new LoginPipeline();
+	
+	private DeliveryTracker deliveryTracker = new DeliveryTracker();
+	
 	
 	/**
 	 * 
-	 * The main entry point of the server application.
+	 * The main entry point of the server application. Several acceptor 
+	 * threads accept the client connections, so that a reconnect storm
+	 * does not overflow the backlog of the server socket, and hand them to 
+	 * the login pipeline.
 	 * 
 	 * @param args The command line arguments
 	 * @throws Exception If an error occurs during server set up or the client management.
@@ -70,26 +99,50 @@ public class Server {
 		System.out.println("****************************************\n");
 		Server server = new Server();
 		server.setUpServer();
+		List<Thread> acceptors = new ArrayList<>();
+		for (int acceptor = 1; acceptor <= ACCEPTORS; acceptor++) {
+			acceptors.add(new Thread(server::acceptClients, "acceptor-" + acceptor));
+		}
+		acceptors.forEach(Thread::start);
 		try {
-			while (true) {
-				new ClientHandler(
-					server.listener.accept(),
-					server.usersCredentials,
-					server.userCredentialsDBName,
-					server.messagesSync,
-					server.messagesDBName,
-					server.connectedClients).start();
+			for (Thread acceptor: acceptors) {
+				acceptor.join();
 			}
 		} finally {
 			server.listener.close();
 		} 
 	}
 	
+	/**
+	 * 
+	 * This method accepts client connections and starts their login until
+	 * the server socket is closed.
+	 * 
+	 */
+	private void acceptClients() {
+		try {
+			while (true) {
+				loginPipeline.submit(new ClientHandler(
+					listener.accept(),
+					authService,
+					messageHistory,
+					connectedClients,
+					presenceTracker,
+					trafficRecorder,
+					deliveryTracker));
+			}
+		} catch (IOException e) {
+			System.out.println("The server stopped accepting connections : " + e.getMessage());
+		}
+	}
+	
 	/**
 	 * 
 	 * This method set up the server by configuring the IP address, the socket and
 	 * establishing connection with clients. Moreover, it also set up the server's
-	 * user credentials and messages databases.
+	 * user credentials and messages databases, loading them from the last snapshot
+	 * when possible, and starts the snapshot writer, the messages log maintenance,
+	 * the presence tracker and the traffic recorder if it is enabled.
 	 * 
 	 */
 	private void setUpServer() {
@@ -97,8 +150,13 @@ public class Server {
 		setUpSocket();
 		try {
 			setUpConnexionWithClient();
+			setUpSnapshot();
 			setUpCredentialsDB();
 			setUpMessagesDB();
+			serverSnapshot.start();
+			messageLog.start();
+			presenceTracker.start();
+			setUpTrafficRecorder();
 		} catch (IOException e) {
 			System.out.println("An error occured during the server's configuration :");
 			e.printStackTrace();
@@ -150,6 +208,8 @@ public class Server {
 	 * 
 	 * This method sets up the server's connection with clients by creating a 
 	 * ServerSocket and binding it to the specified server IP address and port.
+	 * The backlog of connections waiting to be accepted can be set with the
+	 * chat.server.backlog system property.
 	 *
  	 * @throws IOException if an I/O error occurs during the setup of the 
  	 * server's connection with clients.
@@ -159,65 +219,114 @@ public class Server {
 		serverIP = InetAddress.getByName(serverAddress);
 		listener = new ServerSocket();
 		listener.setReuseAddress(true);
-		listener.bind(new InetSocketAddress(serverIP, serverPort));
+		listener.bind(new InetSocketAddress(serverIP, serverPort), BACKLOG);
 		System.out.println("****************************************\n");
 	}
 	
 	/**
 	 * 
-	 * This method sets up a user credentials database. If the file already exist,
-	 * the credential file is read and all data is put in the concurrent HashMap
-	 * of the instance which is stored within the usersCredentials private
-	 * attribute. Else, it creates a user credential file.
+	 * This method names the databases and the snapshot of the server, opens
+	 * the messages log and loads the snapshot if it exists. The most recent
+	 * messages it contains are put in the message history of the instance,
+	 * so that only the messages database's lines written after it need to
+	 * be read. Without a snapshot, the history starts with the most recent
+	 * messages of the log's sealed segments.
+	 * 
+	 * @throws IOException if an I/O error occurs while opening the messages log.
 	 * 
 	 */
-	private void setUpCredentialsDB() {
+	private void setUpSnapshot() throws IOException {
 		userCredentialsDBName = "user_credentials_" + serverIP.getHostAddress() + "_" + serverPort + ".txt";
-	    Path credentialsFilePath = Paths.get(userCredentialsDBName);
-	    if (Files.exists(credentialsFilePath)) {
-	    	fillUserCredentialsHashMap();
-	    } else {
-	    	try {
-	    		BufferedWriter writer = new BufferedWriter(new FileWriter(userCredentialsDBName));
-	            writer.close();
-	            System.out.println("Creating new credentials database: " + userCredentialsDBName);
-	            System.out.println("Please wait, while creating credentials database ...");
-	            System.out.println("Finished creating credentials database. \n");
-	        } catch (IOException e) {
-	        	System.out.println("Error creating credentials database : " + userCredentialsDBName);
-	        	e.printStackTrace();
-	        	System.out.println("Try again.");
-				System.exit(1);
-	        }
-	    }
+		credentialsDBName = "credentials_" + serverIP.getHostAddress() + "_" + serverPort + ".db";
+		credentialsIndexName = "credentials_" + serverIP.getHostAddress() + "_" + serverPort + ".idx";
+		sessionSecretName = "session_secret_" + serverIP.getHostAddress() + "_" + serverPort + ".bin";
+		messagesDBName = "messages_" + serverIP.getHostAddress() + "_" + serverPort + ".txt";
+		snapshotName = "snapshot_" + serverIP.getHostAddress() + "_" + serverPort + ".bin";
+		messageLog = new MessageLog(messagesDBName);
+		messageLog.open();
+		messageHistory = new MessageHistory(messageLog);
+		serverSnapshot = new ServerSnapshot(snapshotName, messageHistory);
+		long start = System.currentTimeMillis();
+		if (serverSnapshot.load()) {
+			System.out.println("Loaded " + messageHistory.getMessages().size() + " messages from snapshot : " + snapshotName + " in " + (System.currentTimeMillis() - start) + " ms. \n");
+		} else {
+			messageHistory.restoreSealedMessages();
+		}
 	}
 	
 	/**
 	 * 
-	 * This method adds all elements contained in the user credentials file to
-	 * the concurrent HashMap of the instance which is stored within the 
-	 * usersCredentials private attribute. It adds the user name as keys
-	 * and password as values.
+	 * This method sets up the user credentials database and the auth workers
+	 * verifying the credentials. The credentials store and its index are 
+	 * opened, or created if they do not exist. If a user credentials file 
+	 * written by a previous version of the server exists, its plain text 
+	 * passwords are migrated to the store.
+	 * 
+	 * @throws IOException if an I/O error occurs while opening the store.
 	 * 
 	 */
-	private void fillUserCredentialsHashMap() {
-		try {
-            BufferedReader fileReader = new BufferedReader(new FileReader(userCredentialsDBName));
+	private void setUpCredentialsDB() throws IOException {
+		boolean isNewStore = !Files.exists(Paths.get(credentialsDBName));
+		credentialStore = new CredentialStore(credentialsDBName, credentialsIndexName);
+		credentialStore.open();
+		authService = new AuthService(credentialStore, sessionSecretName);
+		if (isNewStore) {
+			System.out.println("Creating new credentials database: " + credentialsDBName);
+		} else {
+			System.out.println("Loading existing user credentials from : " + credentialsDBName);
+		}
+		if (Files.exists(Paths.get(userCredentialsDBName))) {
+			migrateUserCredentials();
+		}
+		System.out.println("There is " + credentialStore.size() + " users in the credentials database. \n");
+	}
+	
+	/**
+	 * 
+	 * This method starts recording the traffic received by the server if
+	 * the chat.traffic.record system property names a recording file, so
+	 * that it can be replayed later by the TrafficReplayer.
+	 * 
+	 * @throws IOException if an I/O error occurs while creating the recording.
+	 * 
+	 */
+	private void setUpTrafficRecorder() throws IOException {
+		String recordingName = System.getProperty("chat.traffic.record");
+		if (recordingName != null) {
+			trafficRecorder = new TrafficRecorder(recordingName);
+			trafficRecorder.start();
+			System.out.println("Recording the traffic in : " + recordingName + "\n");
+		}
+	}
+	
+	/**
+	 * 
+	 * This method adds all elements contained in the plain text user credentials
+	 * file to the credentials store, hashed with the current cost by the auth
+	 * workers. The store forces every record it writes, so the plain text file
+	 * is deleted once all of them are added, along with the copy kept by a
+	 * previous version of the server.
+	 * 
+	 */
+	private void migrateUserCredentials() {
+		try (BufferedReader fileReader = new BufferedReader(new FileReader(userCredentialsDBName))) {
+            System.out.println("Migrating plain text user credentials from : " + userCredentialsDBName);
+            System.out.println("Please wait, while migrating credentials ...");
+            List<String[]> credentials = new ArrayList<>();
             String line;
             while ((line = fileReader.readLine()) != null) {
-                String[] credentials = line.split(":");
-                if (credentials.length == 2) {
-                    String username = credentials[0];
-                    String password = credentials[1];
-                    usersCredentials.put(username, password);
+                String[] fields = line.split(":");
+                if (fields.length == 2) {
+                    credentials.add(fields);
                 }
             }
-            fileReader.close();
-            System.out.println("Loading existing user credentials from : " + userCredentialsDBName);
-            System.out.println("Please wait, while loading credentials ...");
-            System.out.println("Finished reading credentials database. \n");
+            int addedUsers = authService.migrate(credentials);
+            Files.delete(Paths.get(userCredentialsDBName));
+            Files.deleteIfExists(Paths.get(userCredentialsDBName + ".migrated"));
+            System.out.println("Finished migrating " + addedUsers + " users to the credentials database. The plain text "
+            		+ "credentials file was deleted. \n");
         } catch (IOException e) {
-            System.out.println("Error reading user credentials database : " + userCredentialsDBName);
+            System.out.println("Error migrating user credentials database : " + userCredentialsDBName);
             e.printStackTrace();
             System.out.println("Try again.");
 			System.exit(1);
@@ -227,14 +336,13 @@ public class Server {
 	/**
 	 * 
 	 * This method sets up a message database. If the file already exist,
-	 * the message file is read and the 15 most recent data is put in 
-	 * the concurrent HashMap of the instance which is stored within 
-	 * the messagesSync private attribute. Else, it creates a message file.
+	 * the message file is read from the offset reached by the snapshot and 
+	 * the 15 most recent data is put in the message history of the instance
+	 * which is stored within the messageHistory private attribute. Else, it 
+	 * creates a message file.
 	 * 
 	 */
 	private void setUpMessagesDB() {
-		messagesSync.put("message", new ArrayList<String>());
-		messagesDBName = "messages_" + serverIP.getHostAddress() + "_" + serverPort + ".txt";
 	    Path messagesFilePath = Paths.get(messagesDBName);
 	    if (Files.exists(messagesFilePath)) {
 	    	fillMessageArray();
@@ -259,24 +367,19 @@ public class Server {
 	
 	/**
 	 * 
-	 * This method adds the 15 most recent messages contained in the 
-	 * message file to the concurrent HashMap of the instance which
-	 * is stored within the messageSync private attribute. It adds 
-	 * the string "message" as keys and an ArrayList containing
-	 * all fifteen message from oldest to newest.
+	 * This method adds the messages contained in the message file after
+	 * the offset reached by the snapshot to the message history of the
+	 * instance which is stored within the messageHistory private attribute.
+	 * The history keeps the fifteen most recent messages from oldest to
+	 * newest and counts all messages to number the next ones. The lines
+	 * are handed to the history as they are read, so that the file is
+	 * never held in memory.
 	 * 
 	 */
 	private void fillMessageArray() {
 		try {
-            BufferedReader fileReader = new BufferedReader(new FileReader(messagesDBName));
-            String message;
-            while ((message = fileReader.readLine()) != null) {
-            	ArrayList<String> messages = getOldMessages();
-            	if (messages.size() == LIMIT) {
-            		messages.remove(FIRST_MESSAGE);
-            	}
-            	messages.add(message);
-            } 
+            InputStream fileReader = openDBFrom(messagesDBName, serverSnapshot.getMessagesOffset());
+            MessageLog.forEachLine(fileReader, messageHistory::restore);
             fileReader.close();
             System.out.println("Loading existing messages from : " + messagesDBName);
             System.out.println("Please wait, while loading messages ...");
@@ -285,7 +388,7 @@ public class Server {
     		System.out.println("*************************************** \n");
     		printOldMessages();
         } catch (IOException e) {
-            System.out.println("Error reading user credentials database : " + messagesDBName);
+            System.out.println("Error reading messages database : " + messagesDBName);
             e.printStackTrace();
             System.out.println("Try again.");
 			System.exit(1);
@@ -294,26 +397,31 @@ public class Server {
 	
 	/**
 	 * 
-	 * @Getter Retrieve the list of 15 most recent messages 
-	 * from the message synchronization object.
+	 * This method opens a database for reading, starting at an offset.
 	 * 
-	 * @return ArrayList<String> The list 15 most recent messages.
+	 * @param String dbName the name of the database
+	 * @param long offset the offset of the first line to read
+	 * @return InputStream the reader of the database
+	 * @throws IOException if an I/O error occurs while opening the database
 	 * 
 	 */
-	private ArrayList<String> getOldMessages(){
-		return messagesSync.get("message");
+	private InputStream openDBFrom(String dbName, long offset) throws IOException {
+		FileInputStream fileStream = new FileInputStream(dbName);
+		fileStream.getChannel().position(offset);
+		return new BufferedInputStream(fileStream, 1 << 16);
 	}
 	
 	/**
 	 * 
 	 * This method prints all old messages stored in the 
-	 * messageSync private attribute of the instance to
+	 * messageHistory private attribute of the instance to
 	 * the server's instance console. 
 	 * 
 	 */
 	private void printOldMessages() {
-		System.out.println("There is " + getOldMessages().size() + " old messages in this chat room.");
-		getOldMessages().forEach(message -> System.out.println(message));
+		ArrayList<String> oldMessages = messageHistory.getMessages();
+		System.out.println("There is " + oldMessages.size() + " old messages in this chat room.");
+		oldMessages.forEach(message -> System.out.println(message));
 		System.out.println("\nWaiting for a client to join the room...");
 		System.out.println("**************************************** \n");
 	}
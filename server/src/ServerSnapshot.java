@@ -0,0 +1,245 @@
+/*********************************************************************
+ *
+ * This file java file contains the class ServerSnapshot which
+ * periodically writes a compact binary image of the server's state :
+ * the window of most recent messages, the sequence number of the newest
+ * message and the offset reached in the active segment of the messages
+ * log, with the sequence number that segment starts after. On restart,
+ * the snapshot is memory-mapped and loaded, so that only the tail of the
+ * active segment written after the snapshot is parsed. The credentials are not part of the snapshot
+ * since the credentials store is indexed on disk.
+ *
+ * file: ServerSnapshot.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ServerSnapshot {
+
+	private static int MAGIC = 0x43534E50;
+
+	private static int FORMAT_VERSION = 4;
+
+	private static int SNAPSHOT_PERIOD_S = 60;
+
+	private String snapshotName;
+
+	private MessageHistory messageHistory;
+
+	private long messagesOffset = 0;
+	
+	private long baseSequence = 0;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	*
+	* Constructs a new ServerSnapshot object.
+	*
+	* @param String snapshotName the name of the snapshot file
+	* @param MessageHistory messageHistory the history of the chat room
+	*
+	*/
+	public ServerSnapshot(String snapshotName, MessageHistory messageHistory) {
+		this.snapshotName = snapshotName;
+		this.messageHistory = messageHistory;
+	}
+
+	/**
+	*
+	* @Getter
+	* This method gets the offset in the messages database up to
+	* which the messages were loaded from the snapshot
+	*
+	* @return long messagesOffset the offset to resume reading from
+	*
+	*/
+	public long getMessagesOffset() {
+		return messagesOffset;
+	}
+
+	/**
+	*
+	* This method memory-maps the snapshot file, if it exists, and loads the
+	* most recent messages it contains. The snapshot is ignored when it is
+	* corrupted, when the active segment was rolled over since, or when it
+	* is shorter than the offset recorded, in which case the active segment
+	* is read whole.
+	*
+	* @return boolean true if the snapshot was loaded, false otherwise
+	*
+	*/
+	public boolean load() {
+		Path snapshotPath = Paths.get(snapshotName);
+		if (!Files.exists(snapshotPath)) {
+			return false;
+		}
+		try (RandomAccessFile file = new RandomAccessFile(snapshotName, "r");
+			 FileChannel channel = file.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+				System.out.println("Ignoring snapshot with an unknown format : " + snapshotName);
+				return false;
+			}
+			long savedMessagesOffset = buffer.getLong();
+			long savedBaseSequence = buffer.getLong();
+			long savedLastSequence = buffer.getLong();
+			MessageLog messageLog = messageHistory.getMessageLog();
+			if (savedBaseSequence != messageLog.getBaseSequence()
+					|| !isLineBoundary(messageLog.getMessagesDBName(), savedMessagesOffset)) {
+				System.out.println("Ignoring snapshot older than the messages database : " + snapshotName);
+				return false;
+			}
+			ArrayList<String> messages = new ArrayList<>();
+			int messagesCount = buffer.getInt();
+			for (int index = 0; index < messagesCount; index++) {
+				messages.add(readString(buffer));
+			}
+			messageHistory.restore(messages, savedLastSequence);
+			messagesOffset = savedMessagesOffset;
+			baseSequence = savedBaseSequence;
+			return true;
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Ignoring unreadable snapshot : " + snapshotName);
+			return false;
+		}
+	}
+
+	/**
+	*
+	* This method starts the background thread writing the snapshot
+	* every snapshot period, if the messages database grew since the last one.
+	*
+	*/
+	public void start() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "snapshot-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				write();
+			} catch (IOException e) {
+				System.out.println("An error occurred while writing the snapshot : " + snapshotName);
+				e.printStackTrace();
+			}
+		}, SNAPSHOT_PERIOD_S, SNAPSHOT_PERIOD_S, TimeUnit.SECONDS);
+	}
+
+	/**
+	*
+	* This method writes the snapshot in a temporary file and moves it over
+	* the previous snapshot. The messages offset, window and sequence numbers
+	* are read while holding the history's lock, which is also held while a
+	* message is added to the log, possibly rolling it over, and the window.
+	*
+	* @throws IOException if an I/O error occurs while writing the snapshot
+	*
+	*/
+	public void write() throws IOException {
+		ArrayList<String> messagesCopy;
+		long currentMessagesOffset;
+		long currentBaseSequence;
+		long currentLastSequence;
+		synchronized (messageHistory) {
+			MessageLog messageLog = messageHistory.getMessageLog();
+			Path activePath = Paths.get(messageLog.getMessagesDBName());
+			currentMessagesOffset = Files.exists(activePath) ? Files.size(activePath) : 0;
+			currentBaseSequence = messageLog.getBaseSequence();
+			messagesCopy = messageHistory.getMessages();
+			currentLastSequence = messageHistory.getLastSequence();
+		}
+		if (currentMessagesOffset == messagesOffset && currentBaseSequence == baseSequence) {
+			return;
+		}
+		Path temporaryPath = Paths.get(snapshotName + ".tmp");
+		try (DataOutputStream writer = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporaryPath), 1 << 16))) {
+			writer.writeInt(MAGIC);
+			writer.writeInt(FORMAT_VERSION);
+			writer.writeLong(currentMessagesOffset);
+			writer.writeLong(currentBaseSequence);
+			writer.writeLong(currentLastSequence);
+			writer.writeInt(messagesCopy.size());
+			for (String message: messagesCopy) {
+				writeString(writer, message);
+			}
+		}
+		Files.move(temporaryPath, Paths.get(snapshotName),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		messagesOffset = currentMessagesOffset;
+		baseSequence = currentBaseSequence;
+	}
+
+	/**
+	*
+	* This method verifies if an offset recorded by the snapshot is still
+	* the start of a line in a database.
+	*
+	* @param String dbName the name of the database
+	* @param long offset the offset recorded by the snapshot
+	* @return boolean true if the database can be read from the offset
+	* @throws IOException if an I/O error occurs while reading the database
+	*
+	*/
+	private static boolean isLineBoundary(String dbName, long offset) throws IOException {
+		if (offset == 0) {
+			return true;
+		}
+		try (RandomAccessFile file = new RandomAccessFile(dbName, "r")) {
+			if (file.length() < offset) {
+				return false;
+			}
+			file.seek(offset - 1);
+			return file.read() == '\n';
+		}
+	}
+
+	/**
+	*
+	* This method reads a length prefixed UTF-8 string from the snapshot.
+	*
+	* @param MappedByteBuffer buffer the memory-mapped snapshot
+	* @return String the string read
+	*
+	*/
+	private static String readString(MappedByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	*
+	* This method writes a length prefixed UTF-8 string in the snapshot.
+	*
+	* @param DataOutputStream writer the snapshot being written
+	* @param String value the string to write
+	* @throws IOException if an I/O error occurs while writing the string
+	*
+	*/
+	private static void writeString(DataOutputStream writer, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writer.writeInt(bytes.length);
+		writer.write(bytes);
+	}
+}
@@ -0,0 +1,238 @@
+/*********************************************************************
+ *
+ * This file java file contains the class SubscriptionFilter which
+ * represents the server-evaluated subscriptions of one connected
+ * client. A filter is immutable: every change requested by the
+ * client compiles a new instance once, so the broadcast loop only
+ * has to run a few set lookups and precompiled patterns for each
+ * recipient before anything is written on its socket.
+ *
+ * file: SubscriptionFilter.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+public final class SubscriptionFilter {
+
+	public static final SubscriptionFilter NONE = new SubscriptionFilter(
+			null, Collections.emptySet(), Collections.emptySet(), false, false);
+
+	private static final LongAdder evaluations = new LongAdder();
+
+	private static final LongAdder rejections = new LongAdder();
+
+	private static final LongAdder evaluationNanos = new LongAdder();
+
+	private final Set<String> mutedUsers;
+
+	private final Set<String> keywords;
+
+	private final boolean isMentionsOnly;
+
+	private final boolean isPresenceSuppressed;
+
+	private final Pattern keywordPattern;
+
+	private final Pattern mentionPattern;
+
+	/**
+	*
+	* Constructs and compiles a new SubscriptionFilter object.
+	*
+	* @param String owner the user name of the client owning the filter
+	* @param Set<String> mutedUsers the user names whose messages are dropped
+	* @param Set<String> keywords the keywords whose messages are dropped
+	* @param boolean isMentionsOnly only deliver messages mentioning the owner
+	* @param boolean isPresenceSuppressed drop join and leave notices
+	*
+	*/
+	private SubscriptionFilter(
+			String owner,
+			Set<String> mutedUsers,
+			Set<String> keywords,
+			boolean isMentionsOnly,
+			boolean isPresenceSuppressed) {
+		this.mutedUsers = Collections.unmodifiableSet(mutedUsers);
+		this.keywords = Collections.unmodifiableSet(keywords);
+		this.isMentionsOnly = isMentionsOnly;
+		this.isPresenceSuppressed = isPresenceSuppressed;
+		this.keywordPattern = compileAlternation(keywords);
+		this.mentionPattern = owner == null ? null
+				: Pattern.compile("@" + Pattern.quote(owner) + "(?![\\p{L}\\p{N}_])", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+	}
+
+	/**
+	*
+	* This method verifies if a client message must be delivered to the
+	* owner of this filter, according to the muted users, the mentions and
+	* the keywords subscriptions.
+	*
+	* @param String sender the user name of the client at the origin of the message
+	* @param String body the text of the message without its header
+	* @return boolean true if the message must be delivered, false otherwise
+	*
+	*/
+	public boolean accepts(String sender, String body) {
+		evaluations.increment();
+		if (this == NONE) {
+			return true;
+		}
+		long start = System.nanoTime();
+		boolean isAccepted;
+		if (mutedUsers.contains(sender)) {
+			isAccepted = false;
+		} else if (isMentionsOnly && !mentionPattern.matcher(body).find()) {
+			isAccepted = false;
+		} else {
+			isAccepted = keywordPattern == null || !keywordPattern.matcher(body).find();
+		}
+		evaluationNanos.add(System.nanoTime() - start);
+		if (!isAccepted) {
+			rejections.increment();
+		}
+		return isAccepted;
+	}
+
+	/**
+	*
+	* This method verifies if the presence notices about connections must
+	* be delivered to the owner of this filter.
+	*
+	* @return boolean true if the presence notices must be delivered, false otherwise
+	*
+	*/
+	public boolean acceptsPresence() {
+		evaluations.increment();
+		if (isPresenceSuppressed) {
+			rejections.increment();
+		}
+		return !isPresenceSuppressed;
+	}
+
+	/**
+	*
+	* This method returns a filter muting or unmuting a user.
+	*
+	* @param String owner the user name of the client owning the filter
+	* @param String user the user name to mute or unmute
+	* @param boolean isMuted true to mute the user, false to unmute the user
+	* @return SubscriptionFilter the compiled filter
+	*
+	*/
+	public SubscriptionFilter withMutedUser(String owner, String user, boolean isMuted) {
+		Set<String> updatedUsers = new TreeSet<>(mutedUsers);
+		if (isMuted) {
+			updatedUsers.add(user);
+		} else {
+			updatedUsers.remove(user);
+		}
+		return new SubscriptionFilter(owner, updatedUsers, keywords, isMentionsOnly, isPresenceSuppressed);
+	}
+
+	/**
+	*
+	* This method returns a filter adding or removing a keyword filter.
+	* Keywords are compared without regard to case.
+	*
+	* @param String owner the user name of the client owning the filter
+	* @param String keyword the keyword to add or remove
+	* @param boolean isFiltered true to add the keyword, false to remove it
+	* @return SubscriptionFilter the compiled filter
+	*
+	*/
+	public SubscriptionFilter withKeyword(String owner, String keyword, boolean isFiltered) {
+		Set<String> updatedKeywords = new TreeSet<>(keywords);
+		if (isFiltered) {
+			updatedKeywords.add(keyword.toLowerCase());
+		} else {
+			updatedKeywords.remove(keyword.toLowerCase());
+		}
+		return new SubscriptionFilter(owner, mutedUsers, updatedKeywords, isMentionsOnly, isPresenceSuppressed);
+	}
+
+	/**
+	*
+	* This method returns a filter with the mentions subscription changed.
+	*
+	* @param String owner the user name of the client owning the filter
+	* @param boolean isMentionsOnly true to only receive messages mentioning the owner
+	* @return SubscriptionFilter the compiled filter
+	*
+	*/
+	public SubscriptionFilter withMentionsOnly(String owner, boolean isMentionsOnly) {
+		return new SubscriptionFilter(owner, mutedUsers, keywords, isMentionsOnly, isPresenceSuppressed);
+	}
+
+	/**
+	*
+	* This method returns a filter with the presence subscription changed.
+	*
+	* @param String owner the user name of the client owning the filter
+	* @param boolean isPresenceSuppressed true to drop join and leave notices
+	* @return SubscriptionFilter the compiled filter
+	*
+	*/
+	public SubscriptionFilter withPresenceSuppressed(String owner, boolean isPresenceSuppressed) {
+		return new SubscriptionFilter(owner, mutedUsers, keywords, isMentionsOnly, isPresenceSuppressed);
+	}
+
+	/**
+	*
+	* This method describes the subscriptions of the filter.
+	*
+	* @return String the description of the filter
+	*
+	*/
+	public String describe() {
+		return "muted users " + mutedUsers + ", filtered keywords " + keywords
+				+ ", mentions only " + (isMentionsOnly ? "on" : "off")
+				+ ", presence notices " + (isPresenceSuppressed ? "off" : "on");
+	}
+
+	/**
+	*
+	* This method describes the evaluation cost of all filters since the
+	* server started.
+	*
+	* @return String the evaluation statistics
+	*
+	*/
+	public static String describeStatistics() {
+		long count = evaluations.sum();
+		long nanos = evaluationNanos.sum();
+		return count + " evaluations, " + rejections.sum() + " deliveries dropped, "
+				+ (nanos / 1000) + " us spent evaluating filters"
+				+ (count == 0 ? "" : " (" + (nanos / count) + " ns per evaluation)");
+	}
+
+	/**
+	*
+	* This method compiles all keywords in a single case insensitive
+	* pattern so that a message is scanned only once per recipient.
+	*
+	* @param Set<String> keywords the keywords to compile
+	* @return Pattern the compiled pattern, null if there is no keyword
+	*
+	*/
+	private static Pattern compileAlternation(Set<String> keywords) {
+		if (keywords.isEmpty()) {
+			return null;
+		}
+		StringBuilder alternation = new StringBuilder();
+		for (String keyword: keywords) {
+			if (alternation.length() > 0) {
+				alternation.append('|');
+			}
+			alternation.append(Pattern.quote(keyword));
+		}
+		return Pattern.compile(alternation.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+	}
+}
@@ -0,0 +1,389 @@
+/*********************************************************************
+ *
+ * This file java file contains the class TrafficRecorder which
+ * records the traffic received by the server in a compact binary
+ * file : the connections, the logins, every frame sent by the logged
+ * in clients and the disconnections, each with the number of its
+ * connection and its time. Passwords and session tokens are never
+ * recorded, only whether the login resumed a session. The recording
+ * is replayed against a fresh server by the TrafficReplayer.
+ *
+ * file: TrafficRecorder.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TrafficRecorder {
+
+	public static final byte CONNECT = 1;
+
+	public static final byte LOGIN = 2;
+
+	public static final byte RESUMED_LOGIN = 3;
+
+	public static final byte FRAME = 4;
+
+	public static final byte DISCONNECT = 5;
+
+	public static final TrafficRecorder DISABLED = new TrafficRecorder();
+
+	private static int MAGIC = 0x43545243;
+
+	private static int FORMAT_VERSION = 1;
+
+	private static int FLUSH_PERIOD_MS = 1000;
+
+	private String recordingName;
+
+	private DataOutputStream writer;
+
+	private long startNanos = System.nanoTime();
+
+	private long lastMicros = 0;
+
+	private AtomicInteger connectionCount = new AtomicInteger();
+
+	private ScheduledExecutorService flusher;
+
+	/**
+	*
+	* This class represents an event of a recording.
+	*
+	*/
+	public static class Event {
+
+		private final byte type;
+
+		private final int connection;
+
+		private final long micros;
+
+		private final String value;
+
+		/**
+		*
+		* Constructs a new Event object.
+		*
+		* @param byte type the type of the event
+		* @param int connection the number of the connection
+		* @param long micros the time of the event since the start of the recording
+		* @param String value the user name of a login or the frame received, null otherwise
+		*
+		*/
+		public Event(byte type, int connection, long micros, String value) {
+			this.type = type;
+			this.connection = connection;
+			this.micros = micros;
+			this.value = value;
+		}
+
+		/**
+		*
+		* @Getter
+		* This method gets the type of the event
+		*
+		* @return byte type the type of the event
+		*
+		*/
+		public byte getType() {
+			return type;
+		}
+
+		/**
+		*
+		* @Getter
+		* This method gets the number of the connection of the event
+		*
+		* @return int connection the number of the connection
+		*
+		*/
+		public int getConnection() {
+			return connection;
+		}
+
+		/**
+		*
+		* @Getter
+		* This method gets the time of the event
+		*
+		* @return long micros the time of the event since the start of the recording
+		*
+		*/
+		public long getMicros() {
+			return micros;
+		}
+
+		/**
+		*
+		* @Getter
+		* This method gets the user name of a login or the frame received
+		*
+		* @return String value the value of the event, null if it has none
+		*
+		*/
+		public String getValue() {
+			return value;
+		}
+	}
+
+	/**
+	*
+	* Constructs a disabled TrafficRecorder object, which records nothing.
+	*
+	*/
+	private TrafficRecorder() {
+	}
+
+	/**
+	*
+	* Constructs a new TrafficRecorder object writing in a recording.
+	*
+	* @param String recordingName the name of the recording file
+	* @throws IOException if an I/O error occurs while creating the recording
+	*
+	*/
+	public TrafficRecorder(String recordingName) throws IOException {
+		this.recordingName = recordingName;
+		this.writer = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(recordingName)), 1 << 16));
+		writer.writeInt(MAGIC);
+		writer.writeInt(FORMAT_VERSION);
+	}
+
+	/**
+	*
+	* This method starts the background thread flushing the recording
+	* every second, and flushes it one last time when the server stops.
+	*
+	*/
+	public void start() {
+		if (writer == null) {
+			return;
+		}
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "traffic-recorder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flush, FLUSH_PERIOD_MS, FLUSH_PERIOD_MS, TimeUnit.MILLISECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+	}
+
+	/**
+	*
+	* This method records a new connection.
+	*
+	* @return int the number of the connection
+	*
+	*/
+	public int recordConnection() {
+		int connection = connectionCount.incrementAndGet();
+		record(CONNECT, connection, null);
+		return connection;
+	}
+
+	/**
+	*
+	* This method records the login of a connection.
+	*
+	* @param int connection the number of the connection
+	* @param String username the user name of the user
+	* @param boolean isResumed true if the user resumed their session with a token
+	*
+	*/
+	public void recordLogin(int connection, String username, boolean isResumed) {
+		record(isResumed ? RESUMED_LOGIN : LOGIN, connection, username);
+	}
+
+	/**
+	*
+	* This method records a frame sent by a logged in client.
+	*
+	* @param int connection the number of the connection
+	* @param String frame the frame received
+	*
+	*/
+	public void recordFrame(int connection, String frame) {
+		record(FRAME, connection, frame);
+	}
+
+	/**
+	*
+	* This method records the end of a connection.
+	*
+	* @param int connection the number of the connection
+	*
+	*/
+	public void recordDisconnection(int connection) {
+		record(DISCONNECT, connection, null);
+	}
+
+	/**
+	*
+	* This method writes an event in the recording buffer. The time of the
+	* event is written as the number of microseconds since the previous
+	* event, in a variable number of bytes.
+	*
+	* @param byte type the type of the event
+	* @param int connection the number of the connection
+	* @param String value the user name of a login or the frame received, null otherwise
+	*
+	*/
+	private void record(byte type, int connection, String value) {
+		if (writer == null) {
+			return;
+		}
+		synchronized (this) {
+			long micros = Math.max(lastMicros, (System.nanoTime() - startNanos) / 1000);
+			write(new Event(type, connection, micros, value));
+		}
+	}
+
+	/**
+	*
+	* This method writes an event at its time in the recording. It is also
+	* used to write synthetic recordings.
+	*
+	* @param Event event the event, not older than the previous one
+	*
+	*/
+	public synchronized void write(Event event) {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.writeByte(event.type);
+			writeVarLong(event.connection);
+			writeVarLong(event.micros - lastMicros);
+			if (event.value != null) {
+				writer.writeUTF(event.value);
+			}
+			lastMicros = event.micros;
+		} catch (IOException e) {
+			System.out.println("An error occurred while recording the traffic : " + recordingName);
+			writer = null;
+		}
+	}
+
+	/**
+	*
+	* This method flushes the recording buffer to the recording file.
+	*
+	*/
+	public synchronized void flush() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			System.out.println("An error occurred while recording the traffic : " + recordingName);
+			writer = null;
+		}
+	}
+
+	/**
+	*
+	* This method flushes the recording and closes it.
+	*
+	*/
+	public synchronized void close() {
+		flush();
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.close();
+		} catch (IOException e) {
+			System.out.println("An error occurred while closing the recording : " + recordingName);
+		}
+		writer = null;
+	}
+
+	/**
+	*
+	* This method reads all events of a recording. A recording cut by the
+	* end of the server is read up to its last complete event.
+	*
+	* @param String recordingName the name of the recording file
+	* @return List<Event> the events, from oldest to newest
+	* @throws IOException if an I/O error occurs while reading the recording
+	*
+	*/
+	public static List<Event> read(String recordingName) throws IOException {
+		List<Event> events = new ArrayList<>();
+		try (DataInputStream reader = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(Paths.get(recordingName)), 1 << 16))) {
+			if (reader.readInt() != MAGIC || reader.readInt() != FORMAT_VERSION) {
+				throw new IOException("Unknown recording format : " + recordingName);
+			}
+			long micros = 0;
+			while (true) {
+				int type = reader.read();
+				if (type == -1) {
+					break;
+				}
+				int connection = (int) readVarLong(reader);
+				micros += readVarLong(reader);
+				String value = type == LOGIN || type == RESUMED_LOGIN || type == FRAME ? reader.readUTF() : null;
+				events.add(new Event((byte) type, connection, micros, value));
+			}
+		} catch (EOFException e) {
+			System.out.println("The recording ends with an incomplete event : " + recordingName);
+		}
+		return events;
+	}
+
+	/**
+	*
+	* This method writes a positive number in 7 bit groups, the highest bit
+	* of each byte telling if another group follows.
+	*
+	* @param long value the number to write
+	* @throws IOException if an I/O error occurs while writing the number
+	*
+	*/
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			writer.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		writer.writeByte((int) value);
+	}
+
+	/**
+	*
+	* This method reads a positive number written in 7 bit groups.
+	*
+	* @param DataInputStream reader the recording
+	* @return long the number read
+	* @throws IOException if an I/O error occurs while reading the number
+	*
+	*/
+	private static long readVarLong(DataInputStream reader) throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int nextByte = reader.readUnsignedByte();
+			value |= (long) (nextByte & 0x7F) << shift;
+			if ((nextByte & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+}
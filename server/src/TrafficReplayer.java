@@ -0,0 +1,611 @@
+/*********************************************************************
+ *
+ * This file java file contains the class TrafficReplayer which drives
+ * a fresh server with the traffic recorded by the TrafficRecorder. Each
+ * recorded connection is replayed by its own thread at the time it was
+ * recorded, divided by the replay speed : it connects, logs in, sends
+ * its frames and disconnects. The latency of the logins, the time the
+ * server takes to acknowledge that it saved a message, the latency of
+ * the messages, measured until the sender receives its own message back,
+ * the peak rate of accepted connections, the time from connecting to
+ * the old messages and the throughput of the deliveries are written in a
+ * report which can be compared to the report of a baseline replay. It
+ * can also generate synthetic recordings of typical traffic shapes.
+ *
+ * file: TrafficReplayer.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TrafficReplayer {
+
+	private static long START_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+	private static int RETRY_DELAY_MS = 100;
+
+	private static int LOGIN_ATTEMPTS_LIMIT = 100;
+
+	private static int DRAIN_TIMEOUT_MS = 2000;
+
+	private static int RECONNECT_SPREAD_US = 30_000_000;
+
+	private static double TOLERANCE = Double.parseDouble(System.getProperty("chat.replay.tolerance", "0.2"));
+
+	private static String REPLAY_PASSWORD = "replay";
+
+	private static String MESSAGE_PREFIX = "#MSG ";
+
+	private static String ACK_PREFIX = "#ACK ";
+
+	private static String NACK_PREFIX = "#NACK ";
+
+	private static String SESSION_PREFIX = "#SESSION ";
+
+	private static List<String> LOWER_IS_BETTER = List.of(
+			"failed_connections", "login_p50_ms", "login_p99_ms", "first_message_p50_ms", "first_message_p99_ms",
+			"resume_p50_ms", "resume_p99_ms", "persist_p50_ms", "persist_p99_ms", "messages_nacked", "messages_lost", "latency_p50_ms", "latency_p99_ms");
+
+	private static List<String> HIGHER_IS_BETTER = List.of("peak_accepts_per_s", "delivered_per_s");
+
+	private String serverAddress;
+
+	private int serverPort;
+
+	private double speed;
+
+	private long startNanos;
+
+	private ConcurrentHashMap<String, String> sessionTokens = new ConcurrentHashMap<>();
+
+	private LatencySamples loginLatencies = new LatencySamples();
+
+	private LatencySamples firstMessageLatencies = new LatencySamples();
+
+	private LatencySamples resumeLatencies = new LatencySamples();
+
+	private LatencySamples acceptTimes = new LatencySamples();
+
+	private LatencySamples persistLatencies = new LatencySamples();
+
+	private LatencySamples messageLatencies = new LatencySamples();
+
+	private LongAdder connections = new LongAdder();
+
+	private LongAdder failedConnections = new LongAdder();
+
+	private LongAdder retries = new LongAdder();
+
+	private LongAdder messagesSent = new LongAdder();
+
+	private LongAdder messagesNacked = new LongAdder();
+
+	private LongAdder messagesLost = new LongAdder();
+
+	private LongAdder messagesDelivered = new LongAdder();
+
+	private LongAccumulator firstSendNanos = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+	private LongAccumulator lastDeliveryNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	*
+	* This class keeps latency samples to compute their percentiles.
+	*
+	*/
+	private static class LatencySamples {
+
+		private long[] samples = new long[1024];
+
+		private int count = 0;
+
+		/**
+		*
+		* This method adds a sample.
+		*
+		* @param long nanos the latency in nanoseconds
+		*
+		*/
+		private synchronized void add(long nanos) {
+			if (count == samples.length) {
+				samples = Arrays.copyOf(samples, count * 2);
+			}
+			samples[count++] = nanos;
+		}
+
+		/**
+		*
+		* This method computes a percentile of the samples.
+		*
+		* @param double percentile the percentile, between 0 and 100
+		* @return double the latency at the percentile in milliseconds, 0 if there is no sample
+		*
+		*/
+		private synchronized double percentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			int index = (int) Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1);
+			return sorted[Math.max(0, index)] / 1e6;
+		}
+
+		/**
+		*
+		* This method counts the most samples falling within a window, when
+		* the samples are times rather than latencies.
+		*
+		* @param long windowNanos the width of the window in nanoseconds
+		* @return int the largest number of samples within a window
+		*
+		*/
+		private synchronized int peakCount(long windowNanos) {
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			int peakCount = 0;
+			for (int first = 0, last = 0; last < sorted.length; last++) {
+				while (sorted[last] - sorted[first] >= windowNanos) {
+					first++;
+				}
+				peakCount = Math.max(peakCount, last - first + 1);
+			}
+			return peakCount;
+		}
+	}
+
+	/**
+	*
+	* This class represents a message sent and not yet received back.
+	*
+	*/
+	private static class PendingMessage {
+
+		private final String message;
+
+		private final long sentNanos;
+
+		/**
+		*
+		* Constructs a new PendingMessage object.
+		*
+		* @param String message the message sent
+		* @param long sentNanos the time the message was sent
+		*
+		*/
+		private PendingMessage(String message, long sentNanos) {
+			this.message = message;
+			this.sentNanos = sentNanos;
+		}
+	}
+
+	/**
+	*
+	* The main method to run the traffic replayer.
+	*
+	* @param args the recording, the address and port of the server, the
+	* replay speed and the baseline report, or the arguments of generate
+	* @throws Exception if an error occurs during the replay
+	*
+	*/
+	public static void main(String[] args) throws Exception {
+		if (args.length >= 5 && args[0].equals("generate")) {
+			generate(args[1], args[2], Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+			return;
+		}
+		if (args.length < 3) {
+			System.out.println("Usage : java TrafficReplayer <recording> <server ip> <server port> [speed] [baseline report]");
+			System.out.println("        java TrafficReplayer generate storm|chatty|room|reconnect <recording> <connections> <messages>");
+			System.exit(1);
+		}
+		TrafficReplayer replayer = new TrafficReplayer(args[1], Integer.parseInt(args[2]),
+				args.length >= 4 ? Double.parseDouble(args[3]) : 1);
+		Map<String, Double> report = replayer.replay(TrafficRecorder.read(args[0]));
+		StringBuilder reportText = new StringBuilder();
+		report.forEach((key, value) -> reportText.append(key).append('=').append(value).append('\n'));
+		System.out.print(reportText);
+		Files.writeString(Paths.get(args[0] + ".report"), reportText);
+		System.out.println("Report written in : " + args[0] + ".report");
+		if (args.length >= 5 && !isWithinBaseline(report, readReport(args[4]))) {
+			System.exit(2);
+		}
+	}
+
+	/**
+	*
+	* Constructs a new TrafficReplayer object.
+	*
+	* @param String serverAddress the address of the server to drive
+	* @param int serverPort the port of the server to drive
+	* @param double speed the replay speed, 1 to replay at the recorded pace
+	*
+	*/
+	public TrafficReplayer(String serverAddress, int serverPort, double speed) {
+		this.serverAddress = serverAddress;
+		this.serverPort = serverPort;
+		this.speed = speed;
+	}
+
+	/**
+	*
+	* This method replays the events of a recording and waits for all
+	* the connections to end. The thread of a connection is only started
+	* at the time of its first event.
+	*
+	* @param List<TrafficRecorder.Event> events the events of the recording
+	* @return Map<String, Double> the report of the replay
+	* @throws InterruptedException if the replay is interrupted
+	*
+	*/
+	public Map<String, Double> replay(List<TrafficRecorder.Event> events) throws InterruptedException {
+		Map<Integer, List<TrafficRecorder.Event>> connectionEvents = new LinkedHashMap<>();
+		for (TrafficRecorder.Event event: events) {
+			connectionEvents.computeIfAbsent(event.getConnection(), connection -> new ArrayList<>()).add(event);
+		}
+		CountDownLatch remainingConnections = new CountDownLatch(connectionEvents.size());
+		ScheduledExecutorService launcher = Executors.newSingleThreadScheduledExecutor();
+		startNanos = System.nanoTime() + START_DELAY_NS;
+		for (Map.Entry<Integer, List<TrafficRecorder.Event>> entry: connectionEvents.entrySet()) {
+			Thread thread = new Thread(() -> replayConnection(entry.getValue(), remainingConnections),
+					"replayed-connection-" + entry.getKey());
+			thread.setDaemon(true);
+			launcher.schedule(thread::start, getEventNanos(entry.getValue().get(0)) - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		remainingConnections.await();
+		launcher.shutdown();
+		long endNanos = System.nanoTime();
+		long deliveryNanos = lastDeliveryNanos.get() - firstSendNanos.get();
+		Map<String, Double> report = new LinkedHashMap<>();
+		report.put("speed", speed);
+		report.put("duration_s", (endNanos - startNanos) / 1e9);
+		report.put("connections", (double) connections.sum());
+		report.put("failed_connections", (double) failedConnections.sum());
+		report.put("retries", (double) retries.sum());
+		report.put("connections_per_s", connections.sum() / Math.max(1e-9, (endNanos - startNanos) / 1e9));
+		report.put("login_p50_ms", loginLatencies.percentile(50));
+		report.put("login_p99_ms", loginLatencies.percentile(99));
+		report.put("login_max_ms", loginLatencies.percentile(100));
+		report.put("peak_accepts_per_s", (double) acceptTimes.peakCount(TimeUnit.SECONDS.toNanos(1)));
+		report.put("first_message_p50_ms", firstMessageLatencies.percentile(50));
+		report.put("first_message_p99_ms", firstMessageLatencies.percentile(99));
+		report.put("resume_p50_ms", resumeLatencies.percentile(50));
+		report.put("resume_p99_ms", resumeLatencies.percentile(99));
+		report.put("messages_sent", (double) messagesSent.sum());
+		report.put("messages_nacked", (double) messagesNacked.sum());
+		report.put("messages_lost", (double) messagesLost.sum());
+		report.put("messages_delivered", (double) messagesDelivered.sum());
+		report.put("persist_p50_ms", persistLatencies.percentile(50));
+		report.put("persist_p99_ms", persistLatencies.percentile(99));
+		report.put("latency_p50_ms", messageLatencies.percentile(50));
+		report.put("latency_p90_ms", messageLatencies.percentile(90));
+		report.put("latency_p99_ms", messageLatencies.percentile(99));
+		report.put("latency_max_ms", messageLatencies.percentile(100));
+		report.put("delivered_per_s", deliveryNanos <= 0 ? 0 : messagesDelivered.sum() / (deliveryNanos / 1e9));
+		return report;
+	}
+
+	/**
+	*
+	* This method replays the events of a connection, sleeping until the
+	* time of each of them. The frames received are read by another thread.
+	*
+	* @param List<TrafficRecorder.Event> events the events of the connection
+	* @param CountDownLatch remainingConnections the connections not yet ended
+	*
+	*/
+	private void replayConnection(List<TrafficRecorder.Event> events, CountDownLatch remainingConnections) {
+		Socket socket = null;
+		ConcurrentLinkedQueue<PendingMessage> pendingMessages = new ConcurrentLinkedQueue<>();
+		ConcurrentLinkedQueue<Long> pendingAcks = new ConcurrentLinkedQueue<>();
+		try {
+			DataOutputStream toServerCanal = null;
+			DataInputStream fromServerCanal = null;
+			long connectingNanos = 0;
+			long connectedNanos = 0;
+			for (TrafficRecorder.Event event: events) {
+				sleepUntil(getEventNanos(event));
+				if (socket == null) {
+					connectingNanos = System.nanoTime();
+					socket = new Socket(serverAddress, serverPort);
+					toServerCanal = new DataOutputStream(socket.getOutputStream());
+					fromServerCanal = new DataInputStream(socket.getInputStream());
+					connectedNanos = System.nanoTime();
+					acceptTimes.add(connectedNanos);
+					connections.increment();
+				}
+				if (event.getType() == TrafficRecorder.LOGIN || event.getType() == TrafficRecorder.RESUMED_LOGIN) {
+					logIn(event.getValue(), event.getType() == TrafficRecorder.RESUMED_LOGIN, toServerCanal, fromServerCanal);
+					loginLatencies.add(System.nanoTime() - connectedNanos);
+					firstMessageLatencies.add(System.nanoTime() - connectingNanos);
+					if (event.getType() == TrafficRecorder.RESUMED_LOGIN) {
+						resumeLatencies.add(System.nanoTime() - connectingNanos);
+					}
+					DataInputStream receiverCanal = fromServerCanal;
+					Thread receiver = new Thread(() -> receiveFrames(receiverCanal, pendingMessages, pendingAcks), "replayed-receiver");
+					receiver.setDaemon(true);
+					receiver.start();
+				} else if (event.getType() == TrafficRecorder.FRAME) {
+					if (!event.getValue().startsWith("/")) {
+						long sentNanos = System.nanoTime();
+						pendingMessages.add(new PendingMessage(event.getValue(), sentNanos));
+						pendingAcks.add(sentNanos);
+						firstSendNanos.accumulate(sentNanos);
+						messagesSent.increment();
+					}
+					toServerCanal.writeUTF(event.getValue());
+				} else if (event.getType() == TrafficRecorder.DISCONNECT) {
+					long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+					while (!pendingMessages.isEmpty() && System.currentTimeMillis() < drainDeadline) {
+						Thread.sleep(1);
+					}
+					break;
+				}
+			}
+		} catch (IOException e) {
+			failedConnections.increment();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			messagesLost.add(pendingMessages.size());
+			try {
+				if (socket != null) {
+					socket.close();
+				}
+			} catch (IOException e) {
+				failedConnections.increment();
+			}
+			remainingConnections.countDown();
+		}
+	}
+
+	/**
+	*
+	* This method logs in a replayed connection the way the client does.
+	* A login recorded as resumed uses the session token the replay got
+	* at an earlier login of the user, if any. Logins refused because the
+	* server is busy or because the previous connection of the user is not
+	* closed yet are retried.
+	*
+	* @param String username the user name of the user
+	* @param boolean isResumed true if the recorded login resumed a session
+	* @param DataOutputStream toServerCanal communication canal to the server
+	* @param DataInputStream fromServerCanal communication canal from the server
+	* @throws IOException if an I/O error occurs or the login is refused
+	* @throws InterruptedException if the replay is interrupted while waiting to retry
+	*
+	*/
+	private void logIn(String username, boolean isResumed, DataOutputStream toServerCanal, DataInputStream fromServerCanal)
+			throws IOException, InterruptedException {
+		String token = isResumed ? sessionTokens.get(username) : null;
+		for (int attempt = 1; ; attempt++) {
+			toServerCanal.writeUTF(username);
+			toServerCanal.writeUTF(token == null ? REPLAY_PASSWORD : "");
+			toServerCanal.writeUTF(token == null ? "" : token);
+			String validation = fromServerCanal.readUTF();
+			if (validation.startsWith("Login Successful") || validation.startsWith("Account Created")) {
+				break;
+			}
+			if (validation.equals("Session expired : please try again.")) {
+				token = null;
+			} else if (attempt == LOGIN_ATTEMPTS_LIMIT || !(validation.equals("Server busy : please try again.")
+					|| validation.equals("This user is already logged in."))) {
+				throw new IOException("The replayed login was refused : " + validation);
+			} else {
+				retries.increment();
+				Thread.sleep(RETRY_DELAY_MS);
+			}
+		}
+		String session = fromServerCanal.readUTF();
+		sessionTokens.put(username, session.substring(SESSION_PREFIX.length()));
+		toServerCanal.writeUTF("/history 0");
+		fromServerCanal.readUTF();
+	}
+
+	/**
+	*
+	* This method reads the frames received by a replayed connection until
+	* it is closed. When the sender receives the acknowledgement of its
+	* message, the time the server took to save it is recorded, and when it
+	* receives its own message back, the latency of the message is recorded.
+	*
+	* @param DataInputStream fromServerCanal communication canal from the server
+	* @param ConcurrentLinkedQueue<PendingMessage> pendingMessages the messages sent and not yet received back
+	* @param ConcurrentLinkedQueue<Long> pendingAcks the times the messages not yet acknowledged were sent at
+	*
+	*/
+	private void receiveFrames(DataInputStream fromServerCanal, ConcurrentLinkedQueue<PendingMessage> pendingMessages,
+			ConcurrentLinkedQueue<Long> pendingAcks) {
+		try {
+			while (true) {
+				String frame = fromServerCanal.readUTF();
+				if (frame.startsWith(ACK_PREFIX) && !pendingAcks.isEmpty()) {
+					persistLatencies.add(System.nanoTime() - pendingAcks.poll());
+				} else if (frame.startsWith(NACK_PREFIX) && !pendingAcks.isEmpty()) {
+					pendingAcks.poll();
+					pendingMessages.poll();
+					messagesNacked.increment();
+				}
+				if (!frame.startsWith(MESSAGE_PREFIX)) {
+					continue;
+				}
+				long receivedNanos = System.nanoTime();
+				messagesDelivered.increment();
+				lastDeliveryNanos.accumulate(receivedNanos);
+				String message = frame.substring(frame.indexOf(' ', MESSAGE_PREFIX.length()) + 1);
+				PendingMessage pendingMessage = pendingMessages.peek();
+				if (pendingMessage != null && pendingMessage.message.equals(message)) {
+					pendingMessages.poll();
+					messageLatencies.add(receivedNanos - pendingMessage.sentNanos);
+				}
+			}
+		} catch (IOException e) {
+			return;
+		}
+	}
+
+	/**
+	*
+	* This method computes the time an event is replayed at.
+	*
+	* @param TrafficRecorder.Event event the event
+	* @return long the time of the event in nanoseconds
+	*
+	*/
+	private long getEventNanos(TrafficRecorder.Event event) {
+		return startNanos + (long) (event.getMicros() * 1000 / speed);
+	}
+
+	/**
+	*
+	* This method sleeps until a time.
+	*
+	* @param long nanos the time to wake up at
+	* @throws InterruptedException if the replay is interrupted
+	*
+	*/
+	private static void sleepUntil(long nanos) throws InterruptedException {
+		long delay = nanos - System.nanoTime();
+		if (delay > 0) {
+			TimeUnit.NANOSECONDS.sleep(delay);
+		}
+	}
+
+	/**
+	*
+	* This method compares a report to the report of a baseline replay.
+	* A value is a regression when it is worse than the baseline by more
+	* than the tolerance, and by more than one for the values where lower
+	* is better, so that tiny latencies and counts do not fail the replay.
+	*
+	* @param Map<String, Double> report the report of the replay
+	* @param Map<String, Double> baseline the report of the baseline replay
+	* @return boolean true if no value is a regression
+	*
+	*/
+	private static boolean isWithinBaseline(Map<String, Double> report, Map<String, Double> baseline) {
+		boolean isWithinBaseline = true;
+		for (String key: LOWER_IS_BETTER) {
+			if (baseline.containsKey(key) && report.get(key) > baseline.get(key) * (1 + TOLERANCE) + 1) {
+				System.out.println("Regression of " + key + " : " + report.get(key) + " against " + baseline.get(key));
+				isWithinBaseline = false;
+			}
+		}
+		for (String key: HIGHER_IS_BETTER) {
+			if (baseline.containsKey(key) && report.get(key) < baseline.get(key) * (1 - TOLERANCE)) {
+				System.out.println("Regression of " + key + " : " + report.get(key) + " against " + baseline.get(key));
+				isWithinBaseline = false;
+			}
+		}
+		System.out.println(isWithinBaseline ? "The replay is within the baseline." : "The replay regressed from the baseline.");
+		return isWithinBaseline;
+	}
+
+	/**
+	*
+	* This method reads a report written by a replay.
+	*
+	* @param String reportName the name of the report file
+	* @return Map<String, Double> the report
+	* @throws IOException if an I/O error occurs while reading the report
+	*
+	*/
+	private static Map<String, Double> readReport(String reportName) throws IOException {
+		Map<String, Double> report = new LinkedHashMap<>();
+		for (String line: Files.readAllLines(Paths.get(reportName))) {
+			int separator = line.indexOf('=');
+			if (separator > 0) {
+				report.put(line.substring(0, separator), Double.parseDouble(line.substring(separator + 1)));
+			}
+		}
+		return report;
+	}
+
+	/**
+	*
+	* This method writes a synthetic recording of a typical traffic shape.
+	* In a storm, all connections log in within one second and each sends
+	* its messages every 100 ms. With a chatty user, the connections log in
+	* within one second and stay idle while the first one sends its messages
+	* every millisecond. In a room, all connections log in within one second
+	* and send their messages at random times within ten seconds. In a
+	* reconnect storm, the users first log in over thirty seconds and leave
+	* together, then all resume their sessions within one second and send
+	* their messages as in a storm. Except in a storm, the connections stay
+	* until the last message is sent.
+	*
+	* @param String shape storm, chatty, room or reconnect
+	* @param String recordingName the name of the recording file
+	* @param int connectionsCount the number of connections
+	* @param int messagesCount the number of messages per connection
+	* @throws IOException if an I/O error occurs while writing the recording
+	*
+	*/
+	private static void generate(String shape, String recordingName, int connectionsCount, int messagesCount) throws IOException {
+		Random random = new Random(42);
+		List<TrafficRecorder.Event> events = new ArrayList<>();
+		long[] lastMicros = new long[connectionsCount + 1];
+		boolean isReconnect = shape.equals("reconnect");
+		long stormMicros = isReconnect ? RECONNECT_SPREAD_US + 2_000_000 : 0;
+		for (int connection = 1; isReconnect && connection <= connectionsCount; connection++) {
+			long connectMicros = random.nextInt(RECONNECT_SPREAD_US);
+			events.add(new TrafficRecorder.Event(TrafficRecorder.CONNECT, connectionsCount + connection, connectMicros, null));
+			events.add(new TrafficRecorder.Event(TrafficRecorder.LOGIN, connectionsCount + connection, connectMicros + 1000, "user" + connection));
+			events.add(new TrafficRecorder.Event(TrafficRecorder.DISCONNECT, connectionsCount + connection, RECONNECT_SPREAD_US + 1_000_000, null));
+		}
+		for (int connection = 1; connection <= connectionsCount; connection++) {
+			String username = "user" + connection;
+			long connectMicros = stormMicros + random.nextInt(1_000_000);
+			events.add(new TrafficRecorder.Event(TrafficRecorder.CONNECT, connection, connectMicros, null));
+			events.add(new TrafficRecorder.Event(isReconnect ? TrafficRecorder.RESUMED_LOGIN : TrafficRecorder.LOGIN,
+					connection, connectMicros + 1000, username));
+			lastMicros[connection] = connectMicros + 1000;
+			int connectionMessages = shape.equals("chatty") && connection > 1 ? 0 : messagesCount;
+			for (int message = 1; message <= connectionMessages; message++) {
+				long messageMicros;
+				if (shape.equals("storm") || isReconnect) {
+					messageMicros = connectMicros + 1000 + message * 100_000L;
+				} else if (shape.equals("chatty")) {
+					messageMicros = 2_000_000 + message * 1000L;
+				} else {
+					messageMicros = 2_000_000 + random.nextInt(10_000_000);
+				}
+				events.add(new TrafficRecorder.Event(TrafficRecorder.FRAME, connection, messageMicros,
+						"[ " + username + " - 127.0.0.1:0 - replay ] : message " + message + " of " + username));
+				lastMicros[connection] = Math.max(lastMicros[connection], messageMicros);
+			}
+		}
+		long endMicros = Arrays.stream(lastMicros).max().getAsLong();
+		for (int connection = 1; connection <= connectionsCount; connection++) {
+			long disconnectMicros = shape.equals("storm") || isReconnect ? lastMicros[connection] + 1 : endMicros + 1_000_000;
+			events.add(new TrafficRecorder.Event(TrafficRecorder.DISCONNECT, connection, disconnectMicros, null));
+		}
+		events.sort(Comparator.comparingLong(TrafficRecorder.Event::getMicros));
+		TrafficRecorder recorder = new TrafficRecorder(recordingName);
+		events.forEach(recorder::write);
+		recorder.close();
+		System.out.println("Generated " + events.size() + " events in : " + recordingName);
+	}
+}
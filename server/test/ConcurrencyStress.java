@@ -0,0 +1,636 @@
+/*********************************************************************
+ *
+ * This file java file contains the class ConcurrencyStress which
+ * hammers the state shared by the client handlers from many threads
+ * at once and verifies its invariants. It stresses the message history
+ * and its log, while segments are rolled over, compressed and read and
+ * snapshots are written, then simultaneous signups of the same users,
+ * then logins, broadcasts and disconnections against a server running
+ * in the same process. Any invariant violated or exception escaping a
+ * thread is reported, and the suite then exits with an error status.
+ * It is test code, kept out of the server's sources : it is compiled
+ * against the compiled server and run from the test source folder.
+ *
+ * file: ConcurrencyStress.java
+ * authors: Hamza Boukaftane, Mehdi El Harami and Omar Benzekri
+ * date: 18 october 2026
+ * modified: 18 october 2026
+ *
+ **********************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConcurrencyStress {
+
+	private static int DEFAULT_DURATION_S = 10;
+
+	private static int HISTORY_WRITERS = 4;
+
+	private static int HISTORY_READERS = 2;
+
+	private static int SIGNUP_THREADS = 8;
+
+	private static int CLIENT_THREADS = 24;
+
+	private static int USERS = 6;
+
+	private static int SOCKET_TIMEOUT_MS = 10000;
+
+	private static int DELIVERY_GRACE_MS = 200;
+
+	private static int WINDOW = 15;
+
+	private static String PASSWORD = "stress";
+
+	private Path directory;
+
+	private long durationMs;
+
+	private PrintStream console = System.out;
+
+	private List<String> violations = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	*
+	* The main method to run the stress suite.
+	*
+	* @param args the duration of each stress in seconds
+	* @throws Exception if an error occurs while setting up a stress
+	*
+	*/
+	public static void main(String[] args) throws Exception {
+		System.setProperty("chat.messages.segmentBytes", "16384");
+		System.setProperty("chat.auth.hashIterations", "1000");
+		System.setProperty("chat.messages.maintenancePeriodMs", "1");
+		ConcurrencyStress stress = new ConcurrencyStress(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DURATION_S);
+		Thread.setDefaultUncaughtExceptionHandler((thread, exception) ->
+				stress.violations.add("Uncaught " + exception + " in " + thread.getName()));
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		stress.run("history", stress::stressHistory);
+		stress.run("signups", stress::stressSignups);
+		stress.run("sessions", stress::stressSessions);
+		System.setOut(stress.console);
+		if (!stress.violations.isEmpty()) {
+			System.out.println(stress.violations.size() + " invariants were violated :");
+			stress.violations.stream().limit(50).forEach(violation -> System.out.println("  " + violation));
+			System.exit(1);
+		}
+		System.out.println("All invariants held.");
+	}
+
+	/**
+	*
+	* This interface represents a stress of the suite.
+	*
+	*/
+	private interface Stress {
+
+		/**
+		*
+		* This method runs the stress.
+		*
+		* @return String the description of what was stressed
+		* @throws Exception if an error occurs while setting up the stress
+		*
+		*/
+		String run() throws Exception;
+	}
+
+	/**
+	*
+	* Constructs a new ConcurrencyStress object.
+	*
+	* @param int durationS the duration of each stress in seconds
+	* @throws IOException if the temporary directory cannot be created
+	*
+	*/
+	public ConcurrencyStress(int durationS) throws IOException {
+		this.durationMs = durationS * 1000L;
+		this.directory = Files.createTempDirectory("chat-stress");
+	}
+
+	/**
+	*
+	* This method runs a stress and prints what was stressed.
+	*
+	* @param String name the name of the stress
+	* @param Stress stress the stress
+	* @throws Exception if an error occurs while setting up the stress
+	*
+	*/
+	private void run(String name, Stress stress) throws Exception {
+		int previousViolations = violations.size();
+		console.println("Stressing " + name + " for " + (durationMs / 1000) + " s ...");
+		String description = stress.run();
+		console.println("  " + description);
+		console.println("  " + (violations.size() - previousViolations) + " violations.");
+	}
+
+	/**
+	*
+	* This method appends messages to the history from several threads
+	* while others read the log and the history, the background thread of
+	* the log compresses its segments without pause and another thread
+	* writes snapshots. Every
+	* sequence number must be given once, each writer must see its own
+	* sequence numbers increase, and every read must return the message
+	* appended with its sequence number. The history is then reloaded
+	* from the snapshot and the log and must be the same.
+	*
+	* @return String the description of what was stressed
+	* @throws Exception if an error occurs while setting up the stress
+	*
+	*/
+	private String stressHistory() throws Exception {
+		String messagesDBName = directory.resolve("messages_history.txt").toString();
+		String snapshotName = directory.resolve("snapshot_history.bin").toString();
+		MessageLog messageLog = new MessageLog(messagesDBName);
+		messageLog.open();
+		messageLog.start();
+		MessageHistory messageHistory = new MessageHistory(messageLog);
+		ServerSnapshot serverSnapshot = new ServerSnapshot(snapshotName, messageHistory);
+		ConcurrentHashMap<Long, String> appended = new ConcurrentHashMap<>();
+		LongAdder reads = new LongAdder();
+		long deadline = System.currentTimeMillis() + durationMs;
+		List<Thread> threads = new ArrayList<>();
+		for (int writer = 0; writer < HISTORY_WRITERS; writer++) {
+			int writerId = writer;
+			threads.add(new Thread(() -> {
+				long previousSequence = 0;
+				for (int index = 0; System.currentTimeMillis() < deadline; index++) {
+					String message = "[ writer" + writerId + " - 127.0.0.1:0 - stress ] : message " + index;
+					try {
+						long sequence = messageHistory.append(message);
+						if (appended.putIfAbsent(sequence, message) != null) {
+							violations.add("Sequence number " + sequence + " was given twice");
+						}
+						if (sequence <= previousSequence) {
+							violations.add("Writer " + writerId + " got sequence number " + sequence + " after " + previousSequence);
+						}
+						previousSequence = sequence;
+					} catch (IOException e) {
+						violations.add("Append failed : " + e);
+					}
+				}
+			}, "history-writer-" + writer));
+		}
+		for (int reader = 0; reader < HISTORY_READERS; reader++) {
+			threads.add(new Thread(() -> {
+				while (System.currentTimeMillis() < deadline) {
+					long lastSequence = messageHistory.getLastSequence();
+					if (lastSequence == 0) {
+						continue;
+					}
+					long fromSequence = 1 + ThreadLocalRandom.current().nextLong(lastSequence);
+					try {
+						List<String> messages = messageLog.read(fromSequence, 20);
+						for (int index = 0; index < messages.size(); index++) {
+							String expected = appended.get(fromSequence + index);
+							if (expected != null && !expected.equals(messages.get(index))) {
+								violations.add("Reading " + (fromSequence + index) + " returned " + messages.get(index));
+							}
+						}
+						for (String line: messageHistory.getMessagesAfter(lastSequence - WINDOW / 2)) {
+							int separator = line.indexOf(' ');
+							String expected = appended.get(Long.parseLong(line.substring(0, separator)));
+							if (expected != null && !expected.equals(line.substring(separator + 1))) {
+								violations.add("The history returned " + line);
+							}
+						}
+						reads.increment();
+					} catch (IOException e) {
+						violations.add("Read failed : " + e);
+					}
+				}
+			}, "history-reader-" + reader));
+		}
+		threads.add(new Thread(() -> {
+			while (System.currentTimeMillis() < deadline) {
+				try {
+					serverSnapshot.write();
+				} catch (IOException e) {
+					violations.add("Snapshot failed : " + e);
+				}
+			}
+		}, "history-snapshotter"));
+		runAll(threads);
+		long lastSequence = messageHistory.getLastSequence();
+		if (appended.size() != lastSequence) {
+			violations.add(appended.size() + " messages were appended but the last sequence number is " + lastSequence);
+		}
+		for (long sequence = 1; sequence <= lastSequence; sequence += 1000) {
+			List<String> messages = messageLog.read(sequence, 1000);
+			for (int index = 0; index < messages.size(); index++) {
+				if (!messages.get(index).equals(appended.get(sequence + index))) {
+					violations.add("The log holds " + messages.get(index) + " at " + (sequence + index));
+				}
+			}
+			if (messages.size() != Math.min(1000, lastSequence - sequence + 1)) {
+				violations.add("The log lost messages after " + sequence);
+			}
+		}
+		List<String> window = new ArrayList<>();
+		for (long sequence = Math.max(1, lastSequence - WINDOW + 1); sequence <= lastSequence; sequence++) {
+			window.add(appended.get(sequence));
+		}
+		if (!window.equals(messageHistory.getMessages())) {
+			violations.add("The history window is not the last " + WINDOW + " messages");
+		}
+		serverSnapshot.write();
+		messageLog.close();
+		MessageLog reopenedLog = new MessageLog(messagesDBName);
+		reopenedLog.open();
+		MessageHistory reloadedHistory = new MessageHistory(reopenedLog);
+		ServerSnapshot reloadedSnapshot = new ServerSnapshot(snapshotName, reloadedHistory);
+		if (!reloadedSnapshot.load()) {
+			reloadedHistory.restoreSealedMessages();
+		}
+		try (FileInputStream reader = new FileInputStream(messagesDBName)) {
+			reader.getChannel().position(reloadedSnapshot.getMessagesOffset());
+			MessageLog.forEachLine(new BufferedInputStream(reader), reloadedHistory::restore);
+		}
+		if (reloadedHistory.getLastSequence() != lastSequence || !window.equals(reloadedHistory.getMessages())) {
+			violations.add("The reloaded history differs : last sequence number " + reloadedHistory.getLastSequence()
+					+ " instead of " + lastSequence);
+		}
+		return lastSequence + " messages appended by " + HISTORY_WRITERS + " threads, " + reads.sum()
+				+ " concurrent reads. " + messageLog.describeStatistics();
+	}
+
+	/**
+	*
+	* This method makes several threads log in with the same new user name
+	* at the same time, half of them with another password. Exactly one of
+	* them must create the account, and the others must be logged in or
+	* refused according to their password.
+	*
+	* @return String the description of what was stressed
+	* @throws Exception if an error occurs while setting up the stress
+	*
+	*/
+	private String stressSignups() throws Exception {
+		CredentialStore credentialStore = new CredentialStore(directory.resolve("credentials_signups.db").toString(),
+				directory.resolve("credentials_signups.idx").toString());
+		credentialStore.open();
+		AuthService authService = new AuthService(credentialStore, directory.resolve("secret_signups.bin").toString());
+		long deadline = System.currentTimeMillis() + durationMs;
+		AtomicBoolean isOver = new AtomicBoolean();
+		CyclicBarrier barrier = new CyclicBarrier(SIGNUP_THREADS, () -> isOver.set(System.currentTimeMillis() >= deadline));
+		AuthService.Result[] results = new AuthService.Result[SIGNUP_THREADS];
+		AtomicInteger rounds = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for (int thread = 0; thread < SIGNUP_THREADS; thread++) {
+			int threadId = thread;
+			threads.add(new Thread(() -> {
+				try {
+					for (int round = 0; ; round++) {
+						barrier.await();
+						if (isOver.get()) {
+							return;
+						}
+						results[threadId] = authService.authenticate("signup" + round, PASSWORD + (threadId % 2));
+						if (barrier.await() == 0) {
+							verifySignupRound("signup" + round, results, credentialStore);
+							rounds.incrementAndGet();
+						}
+					}
+				} catch (Exception e) {
+					violations.add("Signup failed : " + e);
+					barrier.reset();
+				}
+			}, "signup-" + thread));
+		}
+		runAll(threads);
+		return rounds.get() + " rounds of " + SIGNUP_THREADS + " simultaneous signups, "
+				+ credentialStore.size() + " accounts created";
+	}
+
+	/**
+	*
+	* This method verifies the results of simultaneous signups of a user.
+	*
+	* @param String username the user name of the user
+	* @param AuthService.Result[] results the result of each thread
+	* @param CredentialStore credentialStore the credentials database
+	* @throws IOException if an I/O error occurs while reading the credentials
+	*
+	*/
+	private void verifySignupRound(String username, AuthService.Result[] results, CredentialStore credentialStore) throws IOException {
+		int creator = -1;
+		for (int thread = 0; thread < results.length; thread++) {
+			if (results[thread] == AuthService.Result.CREATED) {
+				if (creator >= 0) {
+					violations.add(username + " was created twice");
+				}
+				creator = thread;
+			}
+		}
+		if (creator < 0) {
+			violations.add(username + " was never created");
+			return;
+		}
+		for (int thread = 0; thread < results.length; thread++) {
+			boolean isSamePassword = thread % 2 == creator % 2;
+			if ((results[thread] == AuthService.Result.LOGGED_IN && !isSamePassword)
+					|| (results[thread] == AuthService.Result.INVALID && isSamePassword)) {
+				violations.add(username + " answered " + results[thread] + " to the " + (isSamePassword ? "right" : "wrong") + " password");
+			}
+		}
+		if (!credentialStore.find(username).matches(PASSWORD + (creator % 2))) {
+			violations.add("The stored password of " + username + " is not the creator's");
+		}
+	}
+
+	/**
+	*
+	* This method runs a server in this process and makes many clients
+	* log in as a few users, broadcast messages and disconnect, sometimes
+	* abruptly while messages are broadcast to them. A user must never be
+	* logged in twice at the same time, the old messages sent at login must
+	* be followed by every message added after them, a sequence number must
+	* always stand for the same message, each message must be acknowledged
+	* to its sender with its sequence number before it is delivered, the
+	* messages of a sender must be delivered in the order they were sent,
+	* and once the handler of a client exited, the client must no longer
+	* be connected on the server.
+	*
+	* @return String the description of what was stressed
+	* @throws Exception if an error occurs while setting up the stress
+	*
+	*/
+	private String stressSessions() throws Exception {
+		CredentialStore credentialStore = new CredentialStore(directory.resolve("credentials_sessions.db").toString(),
+				directory.resolve("credentials_sessions.idx").toString());
+		credentialStore.open();
+		AuthService authService = new AuthService(credentialStore, directory.resolve("secret_sessions.bin").toString());
+		MessageLog messageLog = new MessageLog(directory.resolve("messages_sessions.txt").toString());
+		messageLog.open();
+		messageLog.start();
+		MessageHistory messageHistory = new MessageHistory(messageLog);
+		ConcurrentHashMap<String, ClientHandler> connectedClients = new ConcurrentHashMap<>();
+		PresenceTracker presenceTracker = new PresenceTracker(connectedClients);
+		presenceTracker.start();
+		ServerSocket listener = new ServerSocket(0, 256, InetAddress.getLoopbackAddress());
+		LoginPipeline loginPipeline = new LoginPipeline();
+		DeliveryTracker deliveryTracker = new DeliveryTracker();
+		ConcurrentHashMap<Integer, ClientHandler> handlers = new ConcurrentHashMap<>();
+		Thread acceptor = new Thread(() -> {
+			try {
+				while (true) {
+					Socket socket = listener.accept();
+					ClientHandler handler = new ClientHandler(socket, authService, messageHistory,
+							connectedClients, presenceTracker, TrafficRecorder.DISABLED, deliveryTracker);
+					handlers.put(socket.getPort(), handler);
+					loginPipeline.submit(handler);
+				}
+			} catch (IOException e) {
+				return;
+			}
+		}, "stress-acceptor");
+		acceptor.start();
+		ConcurrentHashMap<String, String> sessionTokens = new ConcurrentHashMap<>();
+		ConcurrentHashMap<Long, String> deliveredMessages = new ConcurrentHashMap<>();
+		LongAdder logins = new LongAdder();
+		LongAdder refusedLogins = new LongAdder();
+		long deadline = System.currentTimeMillis() + durationMs;
+		List<Thread> threads = new ArrayList<>();
+		for (int thread = 0; thread < CLIENT_THREADS; thread++) {
+			int threadId = thread;
+			threads.add(new Thread(() -> {
+				for (int session = 0; System.currentTimeMillis() < deadline; session++) {
+					String username = "user" + ThreadLocalRandom.current().nextInt(USERS);
+					ClientHandler handler = null;
+					try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort())) {
+						socket.setSoTimeout(SOCKET_TIMEOUT_MS);
+						boolean isLoggedIn = runSession(socket, username, "client" + threadId + "-" + session,
+								handlers, connectedClients, sessionTokens, deliveredMessages);
+						(isLoggedIn ? logins : refusedLogins).increment();
+						handler = handlers.remove(socket.getLocalPort());
+					} catch (IOException e) {
+						violations.add("Session of " + username + " failed : " + e);
+					}
+					if (handler != null) {
+						verifySessionEnded(username, handler, connectedClients);
+					}
+				}
+			}, "stress-client-" + thread));
+		}
+		runAll(threads);
+		long leftDeadline = System.currentTimeMillis() + SOCKET_TIMEOUT_MS;
+		while (!connectedClients.isEmpty() && System.currentTimeMillis() < leftDeadline) {
+			Thread.sleep(10);
+		}
+		if (!connectedClients.isEmpty()) {
+			violations.add("Users still connected after every client left : " + connectedClients.keySet());
+		}
+		listener.close();
+		for (Long sequence: deliveredMessages.keySet()) {
+			List<String> messages = messageLog.read(sequence, 1);
+			if (messages.isEmpty() || !messages.get(0).equals(deliveredMessages.get(sequence))) {
+				violations.add("The message delivered as " + sequence + " is not the one in the log");
+			}
+		}
+		return logins.sum() + " sessions of " + USERS + " users by " + CLIENT_THREADS + " threads, "
+				+ refusedLogins.sum() + " logins refused, " + messageHistory.getLastSequence() + " messages broadcast";
+	}
+
+	/**
+	*
+	* This method runs a session of a client : it logs in, sends a few
+	* messages and disconnects, either after receiving its last message
+	* back or abruptly.
+	*
+	* @param Socket socket the socket of the client
+	* @param String username the user name to log in with
+	* @param String sessionName the name of the session, put in its messages
+	* @param Map<Integer, ClientHandler> handlers the handler of each connection, by the port of its client
+	* @param Map<String, ClientHandler> connectedClients the clients connected on the server
+	* @param ConcurrentHashMap<String, String> sessionTokens the last session token of each user
+	* @param ConcurrentHashMap<Long, String> deliveredMessages the message delivered with each sequence number
+	* @return boolean true if the client logged in, false if the login was refused
+	* @throws IOException if an I/O error occurs during the session
+	*
+	*/
+	private boolean runSession(Socket socket, String username, String sessionName,
+			Map<Integer, ClientHandler> handlers, Map<String, ClientHandler> connectedClients,
+			ConcurrentHashMap<String, String> sessionTokens, ConcurrentHashMap<Long, String> deliveredMessages) throws IOException {
+		DataOutputStream toServerCanal = new DataOutputStream(socket.getOutputStream());
+		DataInputStream fromServerCanal = new DataInputStream(socket.getInputStream());
+		String token = ThreadLocalRandom.current().nextBoolean() ? sessionTokens.get(username) : null;
+		toServerCanal.writeUTF(username);
+		toServerCanal.writeUTF(token == null ? PASSWORD : "");
+		toServerCanal.writeUTF(token == null ? "" : token);
+		String validation = fromServerCanal.readUTF();
+		if (!(validation.startsWith("Login Successful") || validation.startsWith("Account Created"))) {
+			if (validation.startsWith("Invalid password")) {
+				violations.add(username + " was refused its password");
+			}
+			return false;
+		}
+		if (connectedClients.get(username) != handlers.get(socket.getLocalPort())) {
+			violations.add(username + " is logged in twice at the same time");
+		}
+		sessionTokens.put(username, fromServerCanal.readUTF().substring("#SESSION ".length()));
+		toServerCanal.writeUTF("/history 0");
+		String[] history = fromServerCanal.readUTF().split("\n");
+		long joinedSequence = Long.parseLong(history[0].substring("#HISTORY ".length()));
+		for (int line = 1; line < history.length; line++) {
+			long sequence = Long.parseLong(history[line].substring(0, history[line].indexOf(' ')));
+			if (sequence != joinedSequence - history.length + 1 + line) {
+				violations.add("The old messages sent to " + username + " are not the last ones");
+			}
+		}
+		int messagesCount = 1 + ThreadLocalRandom.current().nextInt(5);
+		boolean isAbrupt = ThreadLocalRandom.current().nextInt(4) == 0;
+		List<String> sentMessages = new ArrayList<>();
+		for (int index = 0; index < messagesCount; index++) {
+			String message = "[ " + username + " - 127.0.0.1:0 - stress ] : " + sessionName + " message " + index;
+			sentMessages.add(message);
+			toServerCanal.writeUTF(message);
+		}
+		if (isAbrupt) {
+			return true;
+		}
+		TreeSet<Long> receivedSequences = new TreeSet<>();
+		Map<String, long[]> lastReceivedOfSenders = new HashMap<>();
+		List<Long> acknowledgedSequences = new ArrayList<>();
+		long lastOwnSequence = -1;
+		int ownMessagesReceived = 0;
+		long graceDeadline = Long.MAX_VALUE;
+		while (System.currentTimeMillis() < graceDeadline) {
+			String frame;
+			try {
+				socket.setSoTimeout(graceDeadline == Long.MAX_VALUE ? SOCKET_TIMEOUT_MS : DELIVERY_GRACE_MS);
+				frame = fromServerCanal.readUTF();
+			} catch (SocketTimeoutException e) {
+				if (graceDeadline == Long.MAX_VALUE) {
+					violations.add(username + " did not receive its own messages back");
+				}
+				break;
+			}
+			if (frame.startsWith("#ACK ")) {
+				acknowledgedSequences.add(Long.parseLong(frame.substring("#ACK ".length())));
+			}
+			if (!frame.startsWith("#MSG ")) {
+				continue;
+			}
+			int separator = frame.indexOf(' ', "#MSG ".length());
+			long sequence = Long.parseLong(frame.substring("#MSG ".length(), separator));
+			String message = frame.substring(separator + 1);
+			String previousMessage = deliveredMessages.putIfAbsent(sequence, message);
+			if (previousMessage != null && !previousMessage.equals(message)) {
+				violations.add("Sequence number " + sequence + " was delivered for two messages");
+			}
+			if (!receivedSequences.add(sequence)) {
+				violations.add(username + " received " + sequence + " twice");
+			}
+			if (sequence <= joinedSequence) {
+				violations.add(username + " received " + sequence + " which was in its old messages");
+			}
+			verifySenderOrder(username, sequence, message, lastReceivedOfSenders);
+			if (message.equals(sentMessages.get(Math.min(ownMessagesReceived, sentMessages.size() - 1)))) {
+				if (acknowledgedSequences.size() <= ownMessagesReceived
+						|| acknowledgedSequences.get(ownMessagesReceived) != sequence) {
+					violations.add(username + " received its message " + sequence + " before its acknowledgement");
+				}
+				ownMessagesReceived++;
+				lastOwnSequence = sequence;
+				if (ownMessagesReceived == sentMessages.size()) {
+					graceDeadline = System.currentTimeMillis() + DELIVERY_GRACE_MS;
+				}
+			}
+		}
+		for (long sequence = joinedSequence + 1; sequence <= lastOwnSequence; sequence++) {
+			if (!receivedSequences.contains(sequence)) {
+				violations.add(username + " never received " + sequence + " although it was added after its login");
+			}
+		}
+		return true;
+	}
+
+	/**
+	*
+	* This method verifies that a message is delivered after the previous
+	* message of its sender received by the client, with a greater sequence
+	* number, and that no message of the sender was skipped in between.
+	*
+	* @param String username the user name of the client receiving the message
+	* @param long sequence the sequence number of the message
+	* @param String message the message, ending with the session and the index it was sent with
+	* @param Map<String, long[]> lastReceivedOfSenders the sequence number and the index of the last message received from each session
+	*
+	*/
+	private void verifySenderOrder(String username, long sequence, String message, Map<String, long[]> lastReceivedOfSenders) {
+		int indexStart = message.lastIndexOf(" message ");
+		String sender = message.substring(message.indexOf("] : ") + "] : ".length(), indexStart);
+		long index = Long.parseLong(message.substring(indexStart + " message ".length()));
+		long[] lastReceived = lastReceivedOfSenders.put(sender, new long[] { sequence, index });
+		if (lastReceived != null && (sequence <= lastReceived[0] || index != lastReceived[1] + 1)) {
+			violations.add(username + " received the message " + index + " of " + sender + " as " + sequence
+					+ " after its message " + lastReceived[1] + " as " + lastReceived[0]);
+		}
+	}
+
+	/**
+	*
+	* This method waits for the handler of a client which left to exit and
+	* verifies that the client is no longer connected on the server.
+	*
+	* @param String username the user name the client tried to log in with
+	* @param ClientHandler handler the handler of the client on the server
+	* @param Map<String, ClientHandler> connectedClients the clients connected on the server
+	*
+	*/
+	private void verifySessionEnded(String username, ClientHandler handler, Map<String, ClientHandler> connectedClients) {
+		try {
+			handler.join(SOCKET_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (handler.isAlive()) {
+			violations.add("The handler of a client of " + username + " is still running after the client left");
+		} else if (connectedClients.get(username) == handler) {
+			violations.add(username + " is still connected after the handler of its client exited");
+		}
+	}
+
+	/**
+	*
+	* This method starts threads and waits for all of them to end.
+	*
+	* @param List<Thread> threads the threads
+	* @throws InterruptedException if the wait is interrupted
+	*
+	*/
+	private static void runAll(List<Thread> threads) throws InterruptedException {
+		threads.forEach(Thread::start);
+		for (Thread thread: threads) {
+			thread.join();
+		}
+	}
+}